@@ -0,0 +1,34 @@
+package com.pugwoo.dbhelper.test.service;
+
+import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.IDBHelperDataService;
+import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.test.entity.CourseDO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通过学生id查询课程，并记录get被调用的次数，用于测试合并dataService查询
+ */
+@Service
+public class CountingCourseDataService implements IDBHelperDataService {
+
+    @Autowired
+    private DBHelper dbHelper;
+
+    private final AtomicInteger getCount = new AtomicInteger();
+
+    @Override
+    public List<?> get(List<Object> values, RelatedColumn relatedColumn, Class<?> localDOClass, Class<?> remoteDOClass) {
+        getCount.incrementAndGet();
+        return dbHelper.getAll(CourseDO.class, "where student_id in (?)", values);
+    }
+
+    public int getGetCount() {
+        return getCount.get();
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.pugwoo.dbhelper.test.service;
+
+import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.IDBHelperDataService;
+import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.vo.CourseWithStudentVO;
+import com.pugwoo.wooutils.collect.ListUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过学生id查询课程，课程关联的学生只查询id字段，用于测试关联查询中切换了只查询字段的情况
+ */
+@Service
+public class CourseWithStudentIdOnlyDataService implements IDBHelperDataService {
+
+    @Autowired
+    private DBHelper dbHelper;
+
+    @Override
+    public List<?> get(List<Object> values, RelatedColumn relatedColumn, Class<?> localDOClass, Class<?> remoteDOClass) {
+        Map<Class<?>, List<String>> selectColumns = new HashMap<>();
+        selectColumns.put(StudentDO.class, ListUtils.newArrayList("id"));
+        List<CourseWithStudentVO> result = new ArrayList<>();
+        DBHelper.withSelectColumns(selectColumns,
+                () -> result.addAll(dbHelper.getAll(CourseWithStudentVO.class, "where student_id in (?)", values)));
+        return result;
+    }
+
+}
@@ -1,7 +1,12 @@
 package com.pugwoo.dbhelper.test.test_common;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.DBHelperInterceptor;
+import com.pugwoo.dbhelper.enums.FeatureEnum;
+import com.pugwoo.dbhelper.enums.PageCountModeEnum;
 import com.pugwoo.dbhelper.exception.InvalidParameterException;
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
+import com.pugwoo.dbhelper.model.CursorPageData;
 import com.pugwoo.dbhelper.model.PageData;
 import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.test.entity.SchoolDO;
@@ -9,19 +14,26 @@ import com.pugwoo.dbhelper.test.entity.StudentDO;
 import com.pugwoo.dbhelper.test.utils.CommonOps;
 import com.pugwoo.dbhelper.test.vo.StudentSchoolJoinVO;
 import com.pugwoo.dbhelper.test.vo.StudentVO;
+import com.pugwoo.wooutils.collect.ListUtils;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @SpringBootTest
 public class Test1Query_GetPageAndCount {
 
     @Autowired
     private DBHelper dbHelper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @Test
     public void testGetPage() {
@@ -134,6 +146,159 @@ public class Test1Query_GetPageAndCount {
         }
     }
 
+    /**postSql改写结果会缓存，缓存命中、关闭缓存时的结果都应一致*/
+    @Test
+    public void testCachedPostSqlRewrite() throws Exception {
+        String where = "where name in (select name from t_student where age > ?) or id=? group by name,age limit 3";
+        String inserted = SQLUtils.insertWhereAndExpression(where, "deleted=0");
+        assert inserted.equals(SQLUtils.insertWhereAndExpression(where, "deleted=0"));
+        assert !inserted.equals(SQLUtils.insertWhereAndExpression(where, "deleted=1"));
+
+        String removed = SQLUtils.removeLimitAndAddOrder(where, true, StudentDO.class);
+        assert removed.equals(SQLUtils.removeLimitAndAddOrder(where, true, StudentDO.class));
+        assert !removed.toLowerCase().contains("limit");
+
+        DBHelper.disableCache();
+        try {
+            assert inserted.equals(SQLUtils.insertWhereAndExpression(where, "deleted=0"));
+            assert removed.equals(SQLUtils.removeLimitAndAddOrder(where, true, StudentDO.class));
+        } finally {
+            DBHelper.enableCache();
+        }
+
+        // 同一个postSql多次分页查询，结果一致
+        String prefix = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        CommonOps.insertBatch(dbHelper, 15, prefix);
+        String pageWhere = "where name in (select name from t_student where name like ?) group by name";
+        PageData<StudentDO> page1 = dbHelper.getPage(StudentDO.class, 2, 10, pageWhere, prefix + "%");
+        PageData<StudentDO> page2 = dbHelper.getPage(StudentDO.class, 2, 10, pageWhere, prefix + "%");
+        assert page1.getTotal() == 15 && page2.getTotal() == 15;
+        assert page1.getData().size() == 5 && page2.getData().size() == 5;
+        assert page1.getData().get(0).getName().equals(page2.getData().get(0).getName());
+    }
+
+    @Test
+    public void testGetPageByCursor() {
+        String prefix = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        CommonOps.insertBatch(dbHelper, 25, prefix);
+
+        // 按主键翻页
+        Set<Long> ids = new HashSet<>();
+        String cursor = null;
+        List<Integer> pageSizes = new ArrayList<>();
+        do {
+            CursorPageData<StudentDO> page = dbHelper.getPageByCursor(StudentDO.class, cursor, 10,
+                    "where name like ?", prefix + "%");
+            pageSizes.add(page.getData().size());
+            for (StudentDO studentDO : page.getData()) {
+                assert ids.add(studentDO.getId());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assert ids.size() == 25;
+        assert pageSizes.get(0) == 10 && pageSizes.get(1) == 10 && pageSizes.get(2) == 5;
+
+        // 多列游标
+        CursorPageData<StudentDO> page = dbHelper.getPageByCursor(StudentDO.class,
+                ListUtils.newList("age", "id"), null, 20, "where name like ?", prefix + "%");
+        assert page.getData().size() == 20 && page.getNextCursor() != null;
+        page = dbHelper.getPageByCursor(StudentDO.class, ListUtils.newList("age", "id"),
+                page.getNextCursor(), 20, "where name like ?", prefix + "%");
+        assert page.getData().size() == 5;
+
+        // 游标列的值为null时无法生成下一页游标，抛出异常
+        boolean isThrow = false;
+        try {
+            dbHelper.getPageByCursor(StudentDO.class, ListUtils.newList("school_id", "id"), null, 10,
+                    "where name like ?", prefix + "%");
+        } catch (InvalidParameterException e) {
+            isThrow = true;
+            assert e.getMessage().contains("schoolId");
+        }
+        assert isThrow;
+
+        // 错误的游标
+        isThrow = false;
+        try {
+            dbHelper.getPageByCursor(StudentDO.class, "not-a-cursor", 10);
+        } catch (InvalidParameterException e) {
+            isThrow = true;
+        }
+        assert isThrow;
+    }
+
+    /**设置了总数查询的线程池时，结果和串行查询一致*/
+    @Test
+    public void testGetPageWithCountExecutor() {
+        String prefix = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        CommonOps.insertBatch(dbHelper, 25, prefix);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SpringJdbcDBHelper executorDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+            executorDBHelper.setPageCountExecutor(executor);
+
+            for (int page = 1; page <= 3; page++) {
+                PageData<StudentDO> expected = dbHelper.getPage(StudentDO.class, page, 10,
+                        "where name like ?", prefix + "%");
+                PageData<StudentDO> actual = executorDBHelper.getPage(StudentDO.class, page, 10,
+                        "where name like ?", prefix + "%");
+                assert actual.getTotal() == 25 && expected.getTotal() == 25;
+                assert ListUtils.transform(actual.getData(), StudentDO::getId)
+                        .equals(ListUtils.transform(expected.getData(), StudentDO::getId));
+            }
+
+            // 总数查询出错时抛出原来的异常
+            boolean isThrow = false;
+            try {
+                executorDBHelper.getPage(StudentDO.class, 1, 10, "where not_exist_column=?", 1);
+            } catch (BadSqlGrammarException e) {
+                isThrow = true;
+            }
+            assert isThrow;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetPageWithCountMode() {
+        String prefix = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        CommonOps.insertBatch(dbHelper, 25, prefix);
+
+        SpringJdbcDBHelper cachedDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        cachedDBHelper.setPageCountCacheSeconds(60);
+
+        PageData<StudentDO> page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.CACHED, 1, 10,
+                "where name like ?", prefix + "%");
+        assert page.getTotal() == 25 && page.getData().size() == 10;
+
+        // 缓存期间新增的数据不影响总数，准确模式下是最新的
+        CommonOps.insertBatch(dbHelper, 5, prefix);
+        page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.CACHED, 1, 10,
+                "where name like ?", prefix + "%");
+        assert page.getTotal() == 25;
+        page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.EXACT, 1, 10,
+                "where name like ?", prefix + "%");
+        assert page.getTotal() == 30;
+
+        // 不同的参数分别缓存
+        page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.CACHED, 1, 10,
+                "where name like ?", prefix + "%" + "not-exist");
+        assert page.getTotal() == 0 && page.getData().isEmpty();
+
+        // 估算值不会小于已经查到的记录数，不满一页时总数是准确的
+        page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.ESTIMATED, 1, 10,
+                "where name like ?", prefix + "%");
+        assert page.getTotal() >= 10 && page.getData().size() == 10;
+        page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.ESTIMATED, 3, 10,
+                "where name like ?", prefix + "%");
+        assert page.getTotal() == 30 && page.getData().size() == 10;
+        page = cachedDBHelper.getPage(StudentDO.class, PageCountModeEnum.ESTIMATED, 1, 100,
+                "where name like ?", prefix + "%");
+        assert page.getTotal() == 30;
+    }
+
     @Test
     public void testPageDataTransform() {
         CommonOps.insertBatch(dbHelper,20);
@@ -264,4 +429,44 @@ public class Test1Query_GetPageAndCount {
 
     }
 
+    @Test
+    public void testGetPageByDeferredJoin() {
+        String prefix = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        CommonOps.insertBatch(dbHelper, 25, prefix);
+
+        SpringJdbcDBHelper deferredDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        deferredDBHelper.turnOnFeature(FeatureEnum.DEFERRED_JOIN_FOR_PAGINATION);
+        for (int page = 1; page <= 3; page++) {
+            PageData<StudentDO> expected = dbHelper.getPage(StudentDO.class, page, 10,
+                    "where name like ? order by id desc", prefix + "%");
+            PageData<StudentDO> actual = deferredDBHelper.getPage(StudentDO.class, page, 10,
+                    "where name like ? order by id desc", prefix + "%");
+            assert actual.getTotal() == 25 && expected.getTotal() == 25;
+            assert ListUtils.transform(actual.getData(), StudentDO::getId)
+                    .equals(ListUtils.transform(expected.getData(), StudentDO::getId));
+        }
+
+        // 有拦截器时不走延迟关联，拦截器拿到的是原始的sql和参数
+        List<String> beforeSqls = new ArrayList<>();
+        List<List<Object>> afterArgs = new ArrayList<>();
+        deferredDBHelper.setInterceptors(ListUtils.newArrayList(new DBHelperInterceptor() {
+            @Override
+            public boolean beforeSelect(Class<?> clazz, String sql, List<Object> args) {
+                beforeSqls.add(sql);
+                return true;
+            }
+            @Override
+            public <T> List<T> afterSelect(Class<?> clazz, String sql, List<Object> args,
+                                           List<T> result, long count) {
+                afterArgs.add(new ArrayList<>(args));
+                return result;
+            }
+        }));
+        PageData<StudentDO> page2 = deferredDBHelper.getPage(StudentDO.class, 2, 10,
+                "where name like ? order by id desc", prefix + "%");
+        assert page2.getTotal() == 25 && page2.getData().size() == 10;
+        assert beforeSqls.size() == 1 && beforeSqls.get(0).contains("name like ?");
+        assert afterArgs.size() == 1 && afterArgs.get(0).contains(prefix + "%");
+    }
+
 }
@@ -1,14 +1,20 @@
 package com.pugwoo.dbhelper.test.test_common;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.DBHelperInterceptor;
 import com.pugwoo.dbhelper.annotation.*;
+import com.pugwoo.dbhelper.enums.FeatureEnum;
 import com.pugwoo.dbhelper.enums.JoinTypeEnum;
 import com.pugwoo.dbhelper.exception.BadSQLSyntaxException;
 import com.pugwoo.dbhelper.exception.RelatedColumnFieldNotFoundException;
 import com.pugwoo.dbhelper.exception.SpringBeanNotMatchException;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
 import com.pugwoo.dbhelper.test.entity.CourseDO;
 import com.pugwoo.dbhelper.test.entity.SchoolDO;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.service.CountingCourseDataService;
+import com.pugwoo.dbhelper.test.service.CourseWithStudentIdOnlyDataService;
 import com.pugwoo.dbhelper.test.service.WrongDataService;
 import com.pugwoo.dbhelper.test.utils.CommonOps;
 import com.pugwoo.dbhelper.test.vo.*;
@@ -18,16 +24,34 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @SpringBootTest
 public class Test1Query_RelatedColumn {
 
     @Autowired
     private DBHelper dbHelper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ApplicationContext applicationContext;
+    @Autowired
+    private CountingCourseDataService countingCourseDataService;
 
     @Test
     public void testRelatedColumnWithLimit() {
@@ -53,20 +77,66 @@ public class Test1Query_RelatedColumn {
 
         StudentDO studentDO2 = CommonOps.insertOne(dbHelper);
 
-        List<StudentLimitVO> all = dbHelper.getAll(StudentLimitVO.class, "where id=? or id=?",
-                studentDO.getId(), studentDO2.getId());
-        for (StudentLimitVO a : all) {
-            if (a.getId().equals(studentDO.getId())) {
-                assert a.getMainCourses().size() == 2;
-                assert a.getMainCourses().get(0).getIsMain();
-                assert a.getMainCourses().get(1).getIsMain();
-            }
-            if (a.getId().equals(studentDO2.getId())) {
-                assert a.getMainCourses().isEmpty();
+        // 开启特性时一次查询出每个关联值的前N条数据，结果和逐个查询一致
+        SpringJdbcDBHelper topNDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        topNDBHelper.turnOnFeature(FeatureEnum.RELATED_COLUMN_LIMIT_IN_ONE_QUERY);
+
+        for (DBHelper helper : ListUtils.newArrayList(dbHelper, topNDBHelper)) {
+            List<StudentLimitVO> all = helper.getAll(StudentLimitVO.class, "where id=? or id=?",
+                    studentDO.getId(), studentDO2.getId());
+            assert all.size() == 2;
+            for (StudentLimitVO a : all) {
+                if (a.getId().equals(studentDO.getId())) {
+                    assert a.getMainCourses().size() == 2;
+                    assert a.getMainCourses().get(0).getIsMain();
+                    assert a.getMainCourses().get(1).getIsMain();
+                }
+                if (a.getId().equals(studentDO2.getId())) {
+                    assert a.getMainCourses().isEmpty();
+                }
             }
         }
     }
 
+    @Test
+    public void testRelatedColumnWithLimitIntercepted() {
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+        for (int i = 0; i < 3; i++) {
+            CourseDO courseDO = new CourseDO();
+            courseDO.setName("course" + i);
+            courseDO.setStudentId(studentDO.getId());
+            courseDO.setIsMain(true);
+            dbHelper.insert(courseDO);
+        }
+
+        List<String> beforeSelectSqls = new ArrayList<>();
+        List<Class<?>> afterSelectClasses = new ArrayList<>();
+        SpringJdbcDBHelper interceptedDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        interceptedDBHelper.turnOnFeature(FeatureEnum.RELATED_COLUMN_LIMIT_IN_ONE_QUERY);
+        interceptedDBHelper.setInterceptors(ListUtils.newArrayList(new DBHelperInterceptor() {
+            @Override
+            public boolean beforeSelect(Class<?> clazz, String sql, List<Object> args) {
+                if (clazz == CourseDO.class) {
+                    beforeSelectSqls.add(sql);
+                }
+                return true;
+            }
+            @Override
+            public <T> List<T> afterSelect(Class<?> clazz, String sql, List<Object> args,
+                                           List<T> result, long count) {
+                afterSelectClasses.add(clazz);
+                return result;
+            }
+        }));
+
+        StudentLimitVO one = interceptedDBHelper.getOne(StudentLimitVO.class, "where id=?", studentDO.getId());
+        assert one.getMainCourses().size() == 2;
+        // 设置了拦截器时，即使开启了特性也按每个关联值逐个查询，关联查询同样经过拦截器
+        assert beforeSelectSqls.size() == 1;
+        assert !beforeSelectSqls.get(0).toUpperCase().contains("ROW_NUMBER");
+        assert afterSelectClasses.contains(CourseDO.class);
+    }
+
     @Test
     public void testRelatedColumnConditional() {
         // 构造数据：
@@ -518,4 +588,243 @@ public class Test1Query_RelatedColumn {
 
         dbHelper.handleRelatedColumn(courses);
     }
+
+    @Data
+    public static class StudentMultiRelatedVO extends StudentDO {
+        @RelatedColumn(localColumn = "school_id", remoteColumn = "id")
+        private SchoolDO schoolDO;
+
+        @RelatedColumn(localColumn = "id", remoteColumn = "student_id")
+        private List<CourseDO> courses;
+
+        @RelatedColumn(localColumn = "id", remoteColumn = "student_id", extraWhere = "where is_main=1")
+        private List<CourseDO> mainCourses;
+    }
+
+    /**插入count个学生，每个学生有学校和两门课程，其中一门是主课程*/
+    private List<Long> insertStudentsWithRelated(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SchoolDO schoolDO = new SchoolDO();
+            schoolDO.setName("school" + i);
+            dbHelper.insert(schoolDO);
+
+            StudentDO studentDO = CommonOps.insertOne(dbHelper);
+            studentDO.setSchoolId(schoolDO.getId());
+            dbHelper.update(studentDO);
+            ids.add(studentDO.getId());
+
+            for (int j = 0; j < 2; j++) {
+                CourseDO courseDO = new CourseDO();
+                courseDO.setName("course" + j);
+                courseDO.setStudentId(studentDO.getId());
+                courseDO.setIsMain(j == 0);
+                dbHelper.insert(courseDO);
+            }
+        }
+        return ids;
+    }
+
+    private static void assertSameRelated(List<StudentMultiRelatedVO> expected, List<StudentMultiRelatedVO> actual) {
+        assert expected.size() == actual.size();
+        for (int i = 0; i < expected.size(); i++) {
+            StudentMultiRelatedVO e = expected.get(i);
+            StudentMultiRelatedVO a = actual.get(i);
+            assert e.getId().equals(a.getId());
+            assert a.getSchoolDO() != null && e.getSchoolDO().getId().equals(a.getSchoolDO().getId());
+            assert a.getCourses().size() == 2 && a.getMainCourses().size() == 1;
+            assert new HashSet<>(ListUtils.transform(e.getCourses(), CourseDO::getId))
+                    .equals(new HashSet<>(ListUtils.transform(a.getCourses(), CourseDO::getId)));
+            assert e.getMainCourses().get(0).getId().equals(a.getMainCourses().get(0).getId());
+        }
+    }
+
+    @Test
+    public void testRelatedColumnWithExecutor() {
+        List<Long> ids = insertStudentsWithRelated(10);
+        List<StudentMultiRelatedVO> expected = dbHelper.getAll(StudentMultiRelatedVO.class,
+                "where id in (?) order by id", ids);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            SpringJdbcDBHelper executorDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+            executorDBHelper.setRelatedColumnExecutor(command -> {
+                executed.incrementAndGet();
+                executor.execute(command);
+            });
+
+            List<StudentMultiRelatedVO> actual = executorDBHelper.getAll(StudentMultiRelatedVO.class,
+                    "where id in (?) order by id", ids);
+            assertSameRelated(expected, actual);
+            assert executed.get() > 0; // 多个关联字段时提交到了executor
+
+            // 单个对象、空列表也能正常处理
+            StudentMultiRelatedVO one = executorDBHelper.getOne(StudentMultiRelatedVO.class, "where id=?", ids.get(0));
+            assertSameRelated(ListUtils.newArrayList(expected.get(0)), ListUtils.newArrayList(one));
+            assert executorDBHelper.getAll(StudentMultiRelatedVO.class, "where id=?", -1L).isEmpty();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRelatedColumnWithCallerRunsExecutor() {
+        List<Long> ids = insertStudentsWithRelated(10);
+
+        // executor在调用线程中直接执行任务(例如CallerRunsPolicy)时，任务结束后不能清掉调用线程的上下文
+        SpringJdbcDBHelper callerRunsDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        callerRunsDBHelper.setRelatedColumnExecutor(Runnable::run);
+        callerRunsDBHelper.setMaxRelatedColumnInSize(3);
+
+        Map<Class<?>, String> tableNames = new HashMap<>();
+        tableNames.put(CourseDO.class, "t_course");
+        Map<Class<?>, List<String>> selectColumns = new HashMap<>();
+        selectColumns.put(CourseDO.class, ListUtils.newArrayList("id", "studentId", "isMain"));
+
+        DBHelper.setLocalComment("caller-runs");
+        try {
+            DBHelper.withTableNames(tableNames, () -> DBHelper.withSelectColumns(selectColumns, () -> {
+                List<StudentMultiRelatedVO> all = callerRunsDBHelper.getAll(StudentMultiRelatedVO.class,
+                        "where id in (?) order by id", ids);
+                assert all.size() == 10;
+                for (StudentMultiRelatedVO one : all) {
+                    assert one.getSchoolDO() != null;
+                    assert one.getCourses().size() == 2;
+                    assert one.getMainCourses().size() == 1;
+                    // 拆分后的每个查询都只查询了指定的字段
+                    for (CourseDO courseDO : one.getCourses()) {
+                        assert courseDO.getName() == null;
+                        assert courseDO.getStudentId().equals(one.getId());
+                    }
+                }
+
+                assert "t_course".equals(DBHelperContext.getTableName(CourseDO.class));
+                assert DBHelperContext.getSelectColumns(CourseDO.class) != null;
+                assert "caller-runs".equals(DBHelperContext.getThreadLocalComment());
+            }));
+        } finally {
+            DBHelper.setLocalComment(null);
+        }
+    }
+
+    @Test
+    public void testRelatedColumnChunkedIn() {
+        List<Long> ids = insertStudentsWithRelated(10);
+        List<StudentMultiRelatedVO> expected = dbHelper.getAll(StudentMultiRelatedVO.class,
+                "where id in (?) order by id", ids);
+
+        // 每个in最多3个值，10个学生拆成4个查询后合并
+        SpringJdbcDBHelper chunkDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        chunkDBHelper.setMaxRelatedColumnInSize(3);
+        assertSameRelated(expected, chunkDBHelper.getAll(StudentMultiRelatedVO.class,
+                "where id in (?) order by id", ids));
+
+        // 流式查询按分区处理关联字段，分区同样拆分
+        chunkDBHelper.setFetchSize(7);
+        try (Stream<StudentMultiRelatedVO> stream = chunkDBHelper.getAllForStream(StudentMultiRelatedVO.class,
+                "where id in (?) order by id", ids)) {
+            assertSameRelated(expected, stream.collect(Collectors.toList()));
+        }
+
+        // 拆分后的查询并行执行
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            chunkDBHelper.setRelatedColumnExecutor(executor);
+            assertSameRelated(expected, chunkDBHelper.getAll(StudentMultiRelatedVO.class,
+                    "where id in (?) order by id", ids));
+        } finally {
+            executor.shutdown();
+        }
+
+        // 0表示不拆分
+        chunkDBHelper.setMaxRelatedColumnInSize(0);
+        assertSameRelated(expected, chunkDBHelper.getAll(StudentMultiRelatedVO.class,
+                "where id in (?) order by id", ids));
+    }
+
+    @Data
+    public static class StudentWithCoursesVO extends StudentDO {
+        // 这个dataService里关联查询StudentDO时只查询id
+        @RelatedColumn(localColumn = "id", remoteColumn = "student_id",
+                dataService = CourseWithStudentIdOnlyDataService.class)
+        private List<CourseWithStudentVO> courses;
+
+        @RelatedColumn(localColumn = "id", remoteColumn = "id")
+        private StudentDO self;
+    }
+
+    @Test
+    public void testRelatedColumnLoadedWithDifferentSelectColumns() {
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+        CourseDO courseDO = new CourseDO();
+        courseDO.setName("math");
+        courseDO.setStudentId(studentDO.getId());
+        dbHelper.insert(courseDO);
+
+        // 同一次关联处理中，只查询部分字段时查到的数据不能给查询全部字段的关联使用，反之亦然
+        StudentWithCoursesVO one = dbHelper.getOne(StudentWithCoursesVO.class, "where id=?", studentDO.getId());
+        List<CourseWithStudentVO> courses = ListUtils.filter(one.getCourses(), o -> o.getId().equals(courseDO.getId()));
+        assert courses.size() == 1;
+        assert courses.get(0).getStudentDO().getId().equals(studentDO.getId());
+        assert courses.get(0).getStudentDO().getName() == null;
+        assert one.getSelf().getName().equals(studentDO.getName());
+    }
+
+    @Data
+    public static class StudentCountingCoursesVO extends StudentDO {
+        @RelatedColumn(localColumn = "id", remoteColumn = "student_id", dataService = CountingCourseDataService.class)
+        private List<CourseDO> courses;
+    }
+
+    /**两个线程同时查询，返回dataService get被调用的次数*/
+    private int getCoursesConcurrently(DBHelper batchDBHelper, List<Long> ids, String comment1, String comment2)
+            throws Exception {
+        int before = countingCourseDataService.getGetCount();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch ready = new CountDownLatch(2);
+            List<Future<List<StudentCountingCoursesVO>>> futures = new ArrayList<>();
+            for (String comment : ListUtils.newArrayList(comment1, comment2)) {
+                futures.add(executor.submit(() -> {
+                    DBHelper.setLocalComment(comment);
+                    try {
+                        ready.countDown();
+                        ready.await();
+                        return batchDBHelper.getAll(StudentCountingCoursesVO.class, "where id in (?)", ids);
+                    } finally {
+                        DBHelper.setLocalComment(null);
+                    }
+                }));
+            }
+            for (Future<List<StudentCountingCoursesVO>> future : futures) {
+                List<StudentCountingCoursesVO> list = future.get();
+                assert list.size() == ids.size();
+                for (StudentCountingCoursesVO vo : list) {
+                    assert vo.getCourses().size() == 2;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return countingCourseDataService.getGetCount() - before;
+    }
+
+    @Test
+    public void testDataServiceBatch() throws Exception {
+        List<Long> ids = insertStudentsWithRelated(3);
+
+        SpringJdbcDBHelper batchDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        batchDBHelper.setApplicationContext(applicationContext);
+        batchDBHelper.setDataServiceBatch(500, 0);
+
+        // 上下文相同的并发查询合并成一次get
+        assert getCoursesConcurrently(batchDBHelper, ids, "same", "same") == 1;
+        // SQL注释不同时不合并，各自在自己的上下文中调用get
+        assert getCoursesConcurrently(batchDBHelper, ids, "comment1", "comment2") == 2;
+
+        // 不合并时每次查询都调用get
+        batchDBHelper.setDataServiceBatch(0, 0);
+        assert getCoursesConcurrently(batchDBHelper, ids, "same", "same") == 2;
+    }
 }
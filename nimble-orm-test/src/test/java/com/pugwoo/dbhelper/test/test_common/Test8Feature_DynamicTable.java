@@ -6,6 +6,7 @@ import com.pugwoo.dbhelper.test.entity.JsonDO;
 import com.pugwoo.dbhelper.test.entity.SchoolDO;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
 import com.pugwoo.dbhelper.test.entity.StudentNoTableNameDO;
+import com.pugwoo.dbhelper.test.utils.CommonOps;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -144,4 +145,32 @@ public class Test8Feature_DynamicTable {
         assert ex;
     }
 
+    /**select语句的缓存要区分相关类的自定义表名*/
+    @Test
+    public void testCachedSelectSQLWithTableNames() {
+        DBHelperContext.resetTableName(); // 其它测试可能在当前线程留下了自定义表名
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+
+        // 先查询一次，让默认表名的语句进入缓存
+        assert dbHelper.getAll(StudentDO.class, "where id=?", studentDO.getId()).size() == 1;
+        assert dbHelper.getCount(StudentDO.class, "where id=?", studentDO.getId()) == 1;
+
+        Map<Class<?>, String> map = new HashMap<>();
+        map.put(StudentDO.class, "t_student_del");
+        DBHelper.withTableNames(map, () -> {
+            assert dbHelper.getAll(StudentDO.class, "where id=?", studentDO.getId()).isEmpty();
+            assert dbHelper.getCount(StudentDO.class, "where id=?", studentDO.getId()) == 0;
+        });
+
+        // 其它类的自定义表名不影响
+        Map<Class<?>, String> map2 = new HashMap<>();
+        map2.put(JsonDO.class, "t_json_not_exist");
+        DBHelper.withTableNames(map2, () -> {
+            assert dbHelper.getAll(StudentDO.class, "where id=?", studentDO.getId()).size() == 1;
+            assert dbHelper.getCount(StudentDO.class, "where id=?", studentDO.getId()) == 1;
+        });
+
+        assert dbHelper.getAll(StudentDO.class, "where id=?", studentDO.getId()).size() == 1;
+    }
+
 }
@@ -1,12 +1,22 @@
 package com.pugwoo.dbhelper.test.test_common;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
 import com.pugwoo.dbhelper.test.service.WithTransactionService;
+import com.pugwoo.dbhelper.test.test_common.TestDBHelper_query.StudentEntityCacheDO;
+import com.pugwoo.dbhelper.test.utils.CommonOps;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @SpringBootTest
 public class Test8Feature_Transaction {
@@ -15,6 +25,10 @@ public class Test8Feature_Transaction {
     private DBHelper dbHelper;
     @Autowired
     private WithTransactionService withTransactionService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     /**测试事务是否生效*/
     @Test
@@ -64,4 +78,66 @@ public class Test8Feature_Transaction {
         assert count + 1== count2;
     }
 
+    /**在另外一个线程按主键查询，事务中不使用缓存，所以要在事务外查询才会放入缓存*/
+    private String getNameInOtherThread(DBHelper cacheDBHelper, Long id) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(() -> cacheDBHelper.getByKey(StudentEntityCacheDO.class, id).getName()).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvictCacheAfterCommit() throws Exception {
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // 没有开启缓存的类、且该表还没有缓存时，事务中修改不注册提交后的失效
+        SpringJdbcDBHelper cacheDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        transactionTemplate.execute(status -> {
+            int synchronizations = TransactionSynchronizationManager.getSynchronizations().size();
+            studentDO.setName("name0");
+            cacheDBHelper.update(studentDO);
+            cacheDBHelper.executeRaw("update t_student set name=? where id=?", "name0", studentDO.getId());
+            assert TransactionSynchronizationManager.getSynchronizations().size() == synchronizations;
+            return null;
+        });
+
+        // 开启了缓存的类在事务中修改时还没有缓存，提交前其它线程放入的旧数据在提交后失效
+        StudentEntityCacheDO cacheDO = dbHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId());
+        transactionTemplate.execute(status -> {
+            cacheDO.setName("name1");
+            cacheDBHelper.update(cacheDO);
+            try {
+                assert getNameInOtherThread(cacheDBHelper, studentDO.getId()).equals("name0");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        });
+        assert cacheDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId()).getName().equals("name1");
+
+        // 表已经有缓存时，executeRaw同样在提交后失效
+        SpringJdbcDBHelper rawDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        assert rawDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId()).getName().equals("name1");
+        transactionTemplate.execute(status -> {
+            rawDBHelper.executeRaw("update t_student set name=? where id=?", "name2", studentDO.getId());
+            try {
+                assert getNameInOtherThread(rawDBHelper, studentDO.getId()).equals("name1");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        });
+        assert rawDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId()).getName().equals("name2");
+
+        // 不在事务中时修改后立即失效，同一个表的其它DO类修改时也失效
+        studentDO.setName("name3");
+        rawDBHelper.update(studentDO);
+        assert rawDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId()).getName().equals("name3");
+        rawDBHelper.executeRaw("update t_student set name=? where id=?", "name4", studentDO.getId());
+        assert rawDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId()).getName().equals("name4");
+    }
+
 }
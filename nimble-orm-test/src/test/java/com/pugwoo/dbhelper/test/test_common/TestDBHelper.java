@@ -11,6 +11,8 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -113,4 +115,44 @@ public class TestDBHelper {
 		assert dbHelper.getByKey(StudentDO.class, studentDO.getId()).getName().equals(studentDO.getName());
 	}
 
+	/**暴露日志参数的渲染方法用于测试*/
+	private static class LogArgsDBHelper extends SpringJdbcDBHelper {
+		private LogArgsDBHelper(JdbcTemplate jdbcTemplate) {
+			super(jdbcTemplate);
+		}
+		private String render(Object args) {
+			return renderLogArgs(args);
+		}
+	}
+
+	@Test
+	public void testRenderLogArgs() {
+		LogArgsDBHelper logDBHelper = new LogArgsDBHelper(jdbcTemplate);
+
+		// 过长的集合和数组(包括基本类型数组)只打印前面的元素
+		List<Object> args = new ArrayList<>();
+		args.add(new int[100000]);
+		args.add(new byte[1000000]);
+		args.add(new long[3]);
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			ids.add(i);
+		}
+		args.add(ids);
+		String log = logDBHelper.render(args);
+		assert log.contains("...(total 100000 elements)");
+		assert log.contains("...(total 1000000 elements)");
+		assert log.contains("[0,0,0]");
+		assert log.length() < 10000;
+
+		// 命名参数的map
+		Map<String, Object> namedArgs = new HashMap<>();
+		namedArgs.put("ids", ids);
+		assert logDBHelper.render(namedArgs).contains("...(total 100000 elements)");
+
+		// 超过最大长度时截断
+		logDBHelper.setMaxSqlLogArgsLength(10);
+		assert logDBHelper.render(args).endsWith("chars)");
+	}
+
 }
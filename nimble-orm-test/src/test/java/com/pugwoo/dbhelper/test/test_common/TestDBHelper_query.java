@@ -1,25 +1,38 @@
 package com.pugwoo.dbhelper.test.test_common;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.DBHelperInterceptor;
+import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.annotation.Table;
 import com.pugwoo.dbhelper.enums.FeatureEnum;
+import com.pugwoo.dbhelper.exception.InvalidParameterException;
 import com.pugwoo.dbhelper.exception.NotAllowQueryException;
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
+import com.pugwoo.dbhelper.json.NimbleOrmJSON;
 import com.pugwoo.dbhelper.model.PageData;
 import com.pugwoo.dbhelper.test.entity.*;
 import com.pugwoo.dbhelper.test.utils.CommonOps;
 import com.pugwoo.dbhelper.test.vo.*;
+import com.pugwoo.dbhelper.utils.AnnotationSupportRowMapper;
 import com.pugwoo.wooutils.collect.ListUtils;
 import com.pugwoo.wooutils.collect.MapUtils;
 import com.pugwoo.wooutils.lang.DateUtils;
+import lombok.Data;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * 测试读操作相关
@@ -29,6 +42,10 @@ public class TestDBHelper_query {
 
     @Autowired
     private DBHelper dbHelper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ApplicationContext applicationContext;
 
     @Test 
     public void testSameTableNameAs() {
@@ -160,6 +177,28 @@ public class TestDBHelper_query {
         assert list.isEmpty();
     }
 
+    /**没有in (?)的集合参数时按位置传参，有集合参数或参数个数不一致时按命名参数处理*/
+    @Test
+    public void testPositionalAndNamedArgs() {
+        List<StudentDO> students = CommonOps.insertBatch(dbHelper, 3);
+        List<Long> ids = ListUtils.transform(students, StudentDO::getId);
+
+        StudentDO one = dbHelper.getOne(StudentDO.class, "where id=? and name=?",
+                students.get(0).getId(), students.get(0).getName());
+        assert one != null && one.getId().equals(students.get(0).getId());
+
+        assert dbHelper.getAll(StudentDO.class, "where id in (?)", ids).size() == 3;
+        assert dbHelper.getCount(StudentDO.class, "where id in (?) and name like ?", ids, "nick%") == 3;
+        assert dbHelper.getRaw(StudentDO.class, "select * from t_student where id in (?)", ids).size() == 3;
+        assert dbHelper.getRaw(StudentDO.class, "select * from t_student where id=?", ids.get(1)).size() == 1;
+
+        // 参数个数比?多时，和原来的行为一致，多余的参数被忽略
+        assert dbHelper.getAll(StudentDO.class, "where id in (?)", ids.toArray()).size() == 1;
+
+        assert dbHelper.updateAll(StudentDO.class, "set age=3", "where id in (?)", ids) == 3;
+        assert dbHelper.updateAll(StudentDO.class, "set age=4", "where id=?", ids.get(0)) == 1;
+    }
+
     @Test
     public void testGetJoin() {
         SchoolDO schoolDO = new SchoolDO();
@@ -521,4 +560,347 @@ public class TestDBHelper_query {
 
     }
 
+    /**同一个rowMapper用于不同列顺序的ResultSet时，每个ResultSet都重新解析列下标*/
+    @Test
+    public void testRowMapperPlanPerResultSet() {
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+
+        AnnotationSupportRowMapper<StudentForRawDO> mapper =
+                new AnnotationSupportRowMapper<>(dbHelper, StudentForRawDO.class);
+        List<StudentForRawDO> list1 = jdbcTemplate.query("select id,name from t_student where id=?",
+                mapper, studentDO.getId());
+        List<StudentForRawDO> list2 = jdbcTemplate.query("select name,age,id from t_student where id=?",
+                mapper, studentDO.getId());
+
+        assert list1.size() == 1 && list2.size() == 1;
+        assert list1.get(0).getId().equals(studentDO.getId());
+        assert list1.get(0).getName().equals(studentDO.getName());
+        assert list2.get(0).getId().equals(studentDO.getId());
+        assert list2.get(0).getName().equals(studentDO.getName());
+    }
+
+    /**使用缓存的类映射模板(生成的构造方法)和关闭缓存时的查询结果应完全一致*/
+    @Test
+    public void testRowMapperTemplate() {
+        SchoolDO schoolDO = new SchoolDO();
+        schoolDO.setName(CommonOps.getRandomName("school"));
+        dbHelper.insert(schoolDO);
+
+        StudentDO studentDO = new StudentDO();
+        studentDO.setName(CommonOps.getRandomName("nick"));
+        studentDO.setAge(18);
+        studentDO.setIntro(studentDO.getName().getBytes());
+        studentDO.setSchoolId(schoolDO.getId());
+        studentDO.setSchoolSnapshot(schoolDO);
+        CourseDO courseDO = new CourseDO();
+        courseDO.setName("math");
+        studentDO.setCourseSnapshot(ListUtils.newList(courseDO));
+        dbHelper.insert(studentDO);
+        StudentDO studentDO2 = CommonOps.insertOne(dbHelper); // 含null值的列
+
+        List<Long> ids = ListUtils.newList(studentDO.getId(), studentDO2.getId());
+        List<Supplier<List<?>>> queries = ListUtils.newArrayList(
+                () -> dbHelper.getAll(StudentDO.class, "where id in (?) order by id", ids),
+                () -> dbHelper.getAll(StudentVO.class, "where id in (?) order by id", ids),
+                () -> dbHelper.getAll(StudentSchoolJoinVO2.class, "where t2.id in (?) order by t2.id", ids),
+                () -> dbHelper.getRaw(StudentForRawDO.class, "select id,name from t_student where id in (?)", ids));
+
+        List<String> cached = new ArrayList<>();
+        for (int i = 0; i < 2; i++) { // 第二次使用缓存的模板
+            cached.clear();
+            queries.forEach(query -> cached.add(NimbleOrmJSON.toJson(query.get())));
+        }
+        DBHelper.disableCache();
+        try {
+            for (int i = 0; i < queries.size(); i++) {
+                assert cached.get(i).equals(NimbleOrmJSON.toJson(queries.get(i).get()));
+            }
+        } finally {
+            DBHelper.enableCache();
+        }
+
+        StudentDO one = dbHelper.getByKey(StudentDO.class, studentDO.getId());
+        assert one.getSchoolSnapshot().getName().equals(schoolDO.getName());
+        assert one.getCourseSnapshot().get(0).getName().equals("math");
+        assert new String(one.getIntro()).equals(studentDO.getName());
+    }
+
+    @Data
+    @Table(value = "t_student", cacheSeconds = 60)
+    public static class StudentEntityCacheDO {
+        @Column(value = "id", isKey = true, isAutoIncrement = true)
+        private Long id;
+        @Column("name")
+        private String name;
+        @Column("create_time")
+        private Date createTime;
+        @Column("intro")
+        private byte[] intro;
+        @Column(value = "school_snapshot", isJSON = true)
+        private SchoolDO schoolSnapshot;
+        @Column(value = "course_snapshot", isJSON = true)
+        private List<CourseDO> courseSnapshot;
+    }
+
+    @Test
+    public void testEntityCacheCopy() {
+        StudentEntityCacheDO studentDO = new StudentEntityCacheDO();
+        studentDO.setName(UUID.randomUUID().toString().replace("-", "").substring(0, 16));
+        studentDO.setCreateTime(DateUtils.parse("2024-01-02 03:04:05"));
+        studentDO.setIntro(new byte[]{1, 2, 3});
+        SchoolDO schoolDO = new SchoolDO();
+        schoolDO.setName("school");
+        studentDO.setSchoolSnapshot(schoolDO);
+        CourseDO courseDO = new CourseDO();
+        courseDO.setName("math");
+        studentDO.setCourseSnapshot(ListUtils.newArrayList(courseDO));
+        dbHelper.insert(studentDO);
+
+        // 第一次查询放入缓存，修改返回的对象不影响缓存
+        StudentEntityCacheDO one = dbHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId());
+        one.getCreateTime().setTime(0);
+        one.getIntro()[0] = 9;
+        one.getSchoolSnapshot().setName("changed");
+        one.getCourseSnapshot().get(0).setName("changed");
+        one.getCourseSnapshot().add(new CourseDO());
+
+        // 直接修改数据库，再查询时仍然是缓存的数据，说明命中了缓存
+        jdbcTemplate.update("update t_student set name=? where id=?", "changed", studentDO.getId());
+        for (int i = 0; i < 2; i++) {
+            StudentEntityCacheDO cached = dbHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId());
+            assert cached.getName().equals(studentDO.getName());
+            assert cached.getCreateTime().equals(DateUtils.parse("2024-01-02 03:04:05"));
+            assert Arrays.equals(cached.getIntro(), new byte[]{1, 2, 3});
+            assert cached.getSchoolSnapshot().getName().equals("school");
+            assert cached.getCourseSnapshot().size() == 1;
+            assert cached.getCourseSnapshot().get(0).getName().equals("math");
+
+            // 修改命中缓存返回的对象同样不影响缓存
+            cached.getIntro()[1] = 9;
+            cached.getCourseSnapshot().clear();
+        }
+    }
+
+    @Test
+    public void testEntityCacheInterceptor() {
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+
+        List<String> beforeSqls = new ArrayList<>();
+        List<Object> afterResults = new ArrayList<>();
+        SpringJdbcDBHelper interceptedDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        interceptedDBHelper.setInterceptors(ListUtils.newArrayList(new DBHelperInterceptor() {
+            @Override
+            public boolean beforeSelect(Class<?> clazz, String sql, List<Object> args) {
+                beforeSqls.add(sql);
+                return true;
+            }
+            @Override
+            public <T> List<T> afterSelect(Class<?> clazz, String sql, List<Object> args,
+                                           List<T> result, long count) {
+                afterResults.addAll(result);
+                for (T t : result) { // 模拟脱敏
+                    StudentEntityCacheDO student = (StudentEntityCacheDO) t;
+                    student.setName("*" + student.getName());
+                }
+                return result;
+            }
+        }));
+
+        StudentEntityCacheDO one = interceptedDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId());
+        assert one.getName().equals("*" + studentDO.getName());
+        jdbcTemplate.update("update t_student set name=? where id=?", "changed", studentDO.getId());
+        StudentEntityCacheDO cached = interceptedDBHelper.getByKey(StudentEntityCacheDO.class, studentDO.getId());
+        // 命中了缓存，缓存的是拦截器处理前的数据，拦截器对每次返回的对象只处理一次
+        assert cached.getName().equals("*" + studentDO.getName());
+        assert cached != one;
+
+        // 命中缓存时也执行了拦截器
+        assert beforeSqls.size() == 2;
+        assert afterResults.size() == 2;
+        assert afterResults.get(1) == cached;
+    }
+
+    @Test
+    public void testGetByKeys() {
+        List<StudentDO> students = CommonOps.insertBatch(dbHelper, 5, "getByKeys");
+        dbHelper.delete(students.get(4));
+        List<Long> ids = ListUtils.transform(students, StudentDO::getId);
+        Collections.reverse(ids);
+
+        List<Long> keys = new ArrayList<>(ids);
+        keys.add(null); // null值被忽略
+        keys.add(-1L); // 不存在的主键不在结果中
+        Map<Long, StudentDO> map = dbHelper.getByKeys(StudentDO.class, keys);
+        // 顺序和传入的主键一致，软删除的记录不返回
+        assert new ArrayList<>(map.keySet()).equals(ids.subList(1, 5));
+        for (Map.Entry<Long, StudentDO> entry : map.entrySet()) {
+            assert entry.getValue().getId().equals(entry.getKey());
+        }
+
+        // 主键值的类型和DO不一致时也能对应上
+        Map<Integer, StudentDO> intMap = dbHelper.getByKeys(StudentDO.class,
+                ListUtils.newArrayList(students.get(0).getId().intValue()));
+        assert intMap.get(students.get(0).getId().intValue()).getName().equals(students.get(0).getName());
+
+        assert dbHelper.getByKeys(StudentDO.class, new ArrayList<Long>()).isEmpty();
+        assert dbHelper.getByKeys(StudentDO.class, null).isEmpty();
+
+        // in的值太多时拆分成多个查询，结果一样
+        SpringJdbcDBHelper chunkDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        chunkDBHelper.setMaxRelatedColumnInSize(2);
+        Map<Long, StudentDO> chunkMap = chunkDBHelper.getByKeys(StudentDO.class, keys);
+        assert new ArrayList<>(chunkMap.keySet()).equals(ids.subList(1, 5));
+
+        // RelatedColumn会处理
+        Map<Long, StudentVO> voMap = dbHelper.getByKeys(StudentVO.class, ids);
+        assert voMap.size() == 4;
+        for (StudentVO vo : voMap.values()) {
+            assert vo.getCourses() != null;
+        }
+    }
+
+    @Test
+    public void testGetByKeysMultiKey() {
+        TypesDO typesDO1 = new TypesDO();
+        typesDO1.setId1(new Random().nextLong());
+        typesDO1.setId2(new Random().nextLong());
+        TypesDO typesDO2 = new TypesDO();
+        typesDO2.setId1(typesDO1.getId1());
+        typesDO2.setId2(new Random().nextLong());
+        assert dbHelper.insert(ListUtils.newArrayList(typesDO1, typesDO2)) == 2;
+
+        List<List<Long>> keys = ListUtils.newArrayList(
+                ListUtils.newArrayList(typesDO2.getId1(), typesDO2.getId2()),
+                ListUtils.newArrayList(typesDO1.getId1(), typesDO1.getId2()),
+                ListUtils.newArrayList(typesDO1.getId1(), -1L));
+        Map<List<Long>, TypesDO> map = dbHelper.getByKeys(TypesDO.class, keys);
+        assert map.size() == 2;
+        assert new ArrayList<>(map.keySet()).equals(keys.subList(0, 2));
+        assert map.get(keys.get(0)).getId2().equals(typesDO2.getId2());
+        assert map.get(keys.get(1)).getId2().equals(typesDO1.getId2());
+
+        // 多个主键时每个主键值必须是List
+        boolean isThrowException = false;
+        try {
+            dbHelper.getByKeys(TypesDO.class, ListUtils.newArrayList(typesDO1.getId1()));
+        } catch (InvalidParameterException e) {
+            isThrowException = true;
+        }
+        assert isThrowException;
+    }
+
+    @Data
+    public static class StudentSelectCoursesVO extends StudentDO {
+        @RelatedColumn(localColumn = "id", remoteColumn = "student_id")
+        private List<CourseDO> courses;
+    }
+
+    @Test
+    public void testWithSelectColumnsRelated() {
+        StudentDO studentDO = CommonOps.insertOne(dbHelper);
+        CourseDO courseDO = new CourseDO();
+        courseDO.setName("math");
+        courseDO.setStudentId(studentDO.getId());
+        courseDO.setIsMain(true);
+        dbHelper.insert(courseDO);
+
+        Map<Class<?>, List<String>> selectColumns = new HashMap<>();
+        selectColumns.put(StudentSelectCoursesVO.class, ListUtils.newArrayList("name"));
+        selectColumns.put(CourseDO.class, ListUtils.newArrayList("name"));
+        DBHelper.withSelectColumns(selectColumns, () -> {
+            StudentSelectCoursesVO one = dbHelper.getOne(StudentSelectCoursesVO.class, "where id=?", studentDO.getId());
+            assert one.getName().equals(studentDO.getName());
+            assert one.getAge() == null;
+
+            // 关联匹配用到的student_id会自动查询，其它没有指定的字段不查询
+            assert one.getCourses().size() == 1;
+            CourseDO course = one.getCourses().get(0);
+            assert course.getName().equals("math");
+            assert course.getStudentId().equals(studentDO.getId());
+            assert course.getIsMain() == null;
+
+            // 自动补充的字段不影响调用方的设置
+            assert DBHelperContext.getSelectColumns(CourseDO.class).equals(new HashSet<>(ListUtils.newArrayList("name")));
+            assert dbHelper.getOne(CourseDO.class, "where id=?", courseDO.getId()).getStudentId() == null;
+        });
+        assert DBHelperContext.getSelectColumns(CourseDO.class) == null;
+        assert DBHelperContext.getSelectColumns(StudentSelectCoursesVO.class) == null;
+    }
+
+    @Data
+    @Table("t_student")
+    public static class StudentLazyDO {
+        @Column(value = "id", isKey = true, isAutoIncrement = true)
+        private Long id;
+        @Column("name")
+        private String name;
+        @Column(value = "intro", lazy = true)
+        private byte[] intro;
+        @Column(value = "school_snapshot", isJSON = true, lazy = true)
+        private SchoolDO schoolSnapshot;
+    }
+
+    @Test
+    public void testLazyColumns() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            StudentLazyDO studentDO = new StudentLazyDO();
+            studentDO.setName("lazy" + i);
+            studentDO.setIntro(new byte[]{(byte) i});
+            SchoolDO schoolDO = new SchoolDO();
+            schoolDO.setName("school" + i);
+            studentDO.setSchoolSnapshot(schoolDO);
+            dbHelper.insert(studentDO);
+            ids.add(studentDO.getId());
+        }
+
+        // 普通查询不查询延迟字段
+        StudentLazyDO one = dbHelper.getByKey(StudentLazyDO.class, ids.get(0));
+        assert one.getName().equals("lazy0");
+        assert one.getIntro() == null && one.getSchoolSnapshot() == null;
+        dbHelper.handleLazyColumns(one);
+        assert Arrays.equals(one.getIntro(), new byte[]{0});
+        assert one.getSchoolSnapshot().getName().equals("school0");
+
+        // 只加载指定的延迟字段，主键相同的对象都会设置
+        List<StudentLazyDO> list = dbHelper.getAll(StudentLazyDO.class, "where id in (?) order by id", ids);
+        list.add(dbHelper.getByKey(StudentLazyDO.class, ids.get(2)));
+        list.add(null);
+        dbHelper.handleLazyColumns(list, "intro");
+        for (int i = 0; i < 4; i++) {
+            assert Arrays.equals(list.get(i).getIntro(), new byte[]{(byte) Math.min(i, 2)});
+            assert list.get(i).getSchoolSnapshot() == null;
+        }
+        assert DBHelperContext.getSelectColumns(StudentLazyDO.class) == null;
+
+        // in的值太多时拆分查询
+        SpringJdbcDBHelper chunkDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        chunkDBHelper.setMaxRelatedColumnInSize(1);
+        chunkDBHelper.handleLazyColumns(list);
+        for (int i = 0; i < 4; i++) {
+            assert list.get(i).getSchoolSnapshot().getName().equals("school" + Math.min(i, 2));
+        }
+
+        // 明确指定延迟字段时直接查询
+        Map<Class<?>, List<String>> selectColumns = new HashMap<>();
+        selectColumns.put(StudentLazyDO.class, ListUtils.newArrayList("name", "intro"));
+        DBHelper.withSelectColumns(selectColumns, () -> {
+            StudentLazyDO selected = dbHelper.getByKey(StudentLazyDO.class, ids.get(1));
+            assert Arrays.equals(selected.getIntro(), new byte[]{1});
+            assert selected.getSchoolSnapshot() == null;
+        });
+
+        dbHelper.handleLazyColumns(new ArrayList<StudentLazyDO>());
+        dbHelper.handleLazyColumns(new StudentLazyDO()); // 没有主键值时不加载
+
+        // 没有加载延迟字段的对象updateWithNull时，不会把延迟字段更新为null
+        StudentLazyDO notLoaded = dbHelper.getByKey(StudentLazyDO.class, ids.get(0));
+        notLoaded.setName("lazyUpdated");
+        assert dbHelper.updateWithNull(notLoaded) == 1;
+        StudentLazyDO updated = dbHelper.getByKey(StudentLazyDO.class, ids.get(0));
+        dbHelper.handleLazyColumns(updated);
+        assert updated.getName().equals("lazyUpdated");
+        assert Arrays.equals(updated.getIntro(), new byte[]{0});
+        assert updated.getSchoolSnapshot().getName().equals("school0");
+    }
 }
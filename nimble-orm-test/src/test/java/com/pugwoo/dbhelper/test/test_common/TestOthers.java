@@ -5,26 +5,33 @@ import com.pugwoo.dbhelper.cache.ClassInfoCache;
 import com.pugwoo.dbhelper.enums.JoinTypeEnum;
 import com.pugwoo.dbhelper.exception.*;
 import com.pugwoo.dbhelper.model.PageData;
+import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.sql.WhereSQL;
 import com.pugwoo.dbhelper.sql.WhereSQLForNamedParam;
 import com.pugwoo.dbhelper.test.entity.AreaDO;
 import com.pugwoo.dbhelper.test.entity.AreaLocationDO;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.entity.StudentWithLocalDateTimeDO;
 import com.pugwoo.dbhelper.test.entity.TypesDO;
 import com.pugwoo.dbhelper.test.utils.CommonOps;
 import com.pugwoo.dbhelper.test.vo.AreaVO;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
 import com.pugwoo.dbhelper.utils.InnerCommonUtils;
 import com.pugwoo.dbhelper.utils.TypeAutoCast;
+import com.pugwoo.wooutils.collect.ListUtils;
 import com.pugwoo.wooutils.collect.MapUtils;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 其它的一些测试，主要为了覆盖代码或最佳实践
@@ -490,4 +497,152 @@ public class TestOthers {
 
     }
 
+    /**非public的类，只有public的getter/setter*/
+    static class PackagePrivateDO {
+        private String name;
+        public String getName() {
+            return name == null ? null : name + "-get";
+        }
+        public void setName(String name) {
+            this.name = name + "-set";
+        }
+    }
+
+    @Test
+    public void testFieldAccessor() throws NoSuchFieldException {
+        Field field = PackagePrivateDO.class.getDeclaredField("name");
+
+        PackagePrivateDO obj = new PackagePrivateDO();
+        DOInfoReader.setValue(field, obj, "a");
+        assert "a-set-get".equals(DOInfoReader.getValue(field, obj));
+        assert "a-set-get".equals(ClassInfoCache.getFieldAccessor(field).get(obj));
+
+        // 关闭缓存时走反射，结果一致
+        DBHelper.disableCache();
+        try {
+            PackagePrivateDO obj2 = new PackagePrivateDO();
+            DOInfoReader.setValue(field, obj2, "b");
+            assert "b-set-get".equals(DOInfoReader.getValue(field, obj2));
+        } finally {
+            DBHelper.enableCache();
+        }
+    }
+
+    /**构造一个ResultSet，getObject(int, Class)按需抛异常，getTimestamp返回固定时间*/
+    private static java.sql.ResultSet mockTimeResultSet(Timestamp timestamp, boolean supportGetObject,
+                                                        AtomicInteger getObjectCount, Class<?>... interfaces) {
+        return (java.sql.ResultSet) Proxy.newProxyInstance(TestOthers.class.getClassLoader(), interfaces,
+                (proxy, method, args) -> {
+                    if ("getObject".equals(method.getName()) && args.length == 2) {
+                        getObjectCount.incrementAndGet();
+                        if (!supportGetObject) {
+                            throw new java.sql.SQLFeatureNotSupportedException("not supported");
+                        }
+                        return timestamp.toLocalDateTime();
+                    }
+                    if ("getTimestamp".equals(method.getName())) {
+                        return timestamp;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    public void testJavaTimeConverterFallback() throws Exception {
+        Field field = StudentWithLocalDateTimeDO.class.getDeclaredField("createTime");
+        TypeAutoCast.ColumnConverter converter = TypeAutoCast.getConverter(field);
+        Timestamp timestamp = Timestamp.valueOf("2023-01-02 03:04:05");
+
+        // 不支持getObject的driver回退到getTimestamp，且之后不再尝试getObject
+        AtomicInteger unsupportedCount = new AtomicInteger();
+        java.sql.ResultSet unsupportedRs = mockTimeResultSet(timestamp, false, unsupportedCount,
+                java.sql.ResultSet.class);
+        assert timestamp.toLocalDateTime().equals(converter.convert(unsupportedRs, 1));
+        assert timestamp.toLocalDateTime().equals(converter.convert(unsupportedRs, 1));
+        assert unsupportedCount.get() == 1;
+
+        // 另一个driver不受影响，仍然使用getObject
+        AtomicInteger supportedCount = new AtomicInteger();
+        java.sql.ResultSet supportedRs = mockTimeResultSet(timestamp, true, supportedCount,
+                java.sql.ResultSet.class, Cloneable.class);
+        assert timestamp.toLocalDateTime().equals(converter.convert(supportedRs, 1));
+        assert timestamp.toLocalDateTime().equals(converter.convert(supportedRs, 1));
+        assert supportedCount.get() == 2;
+
+        // 关闭缓存时每次都新建转换器
+        DBHelper.disableCache();
+        try {
+            assert TypeAutoCast.getConverter(field) != TypeAutoCast.getConverter(field);
+        } finally {
+            DBHelper.enableCache();
+        }
+        assert TypeAutoCast.getConverter(field) == TypeAutoCast.getConverter(field);
+    }
+
+    private static Object invokeSQLUtils(String methodName, Class<?>[] types, Object... args) throws Exception {
+        java.lang.reflect.Method method = SQLUtils.class.getDeclaredMethod(methodName, types);
+        method.setAccessible(true);
+        return method.invoke(null, args);
+    }
+
+    /**识别简单where子句，不是简单子句时返回null*/
+    private static Object parseSimpleWhereSQL(String sql) throws Exception {
+        java.lang.reflect.Method method = Class.forName("com.pugwoo.dbhelper.sql.SimpleWhereSQL")
+                .getDeclaredMethod("parse", String.class);
+        method.setAccessible(true);
+        return method.invoke(null, sql);
+    }
+
+    /**用JSqlParser格式化，并去掉括号，用于比较两种方式生成的sql*/
+    private static String normalizeSQL(String postSql) throws Exception {
+        return CCJSqlParserUtil.parse("SELECT * FROM dual " + postSql).toString()
+                .replace("(", "").replace(")", "").replaceAll("\\s+", " ");
+    }
+
+    /**简单where子句的快速处理结果应和JSqlParser解析的结果一致*/
+    @Test
+    public void testSimpleWhereSQLSameAsJSqlParser() throws Exception {
+        List<String> sqls = ListUtils.newList(
+                "where a=1",
+                "where name='a''b' and intro=\"x)y\" or `limit`=?",
+                "where name like 'order by (x' limit 10",
+                "where (a=1 or b=2) and (c in (1,2,3) or (d=? and e=?)) order by id desc limit ?,?",
+                "where a=:a and b in (:list) or c is not null order by t.id asc, name desc limit :limit",
+                "where t1.`name`=? and case when age>1 then 1 else 0 end=1 limit 5",
+                "where a between 1 and 10 group by age having count(*)>1 order by age limit 2",
+                "where a=1 limit 10 offset 5",
+                "order by id",
+                "limit 3");
+
+        for (String sql : sqls) {
+            assert parseSimpleWhereSQL(sql) != null : sql;
+
+            if (sql.startsWith("where")) { // 没有where时直接在前面加上where条件，不需要解析
+                String fast = SQLUtils.insertWhereAndExpression(sql, "deleted=0");
+                String parsed = (String) invokeSQLUtils("_insertWhereAndExpression",
+                        new Class[]{String.class, String.class}, sql, "deleted=0");
+                assert normalizeSQL(fast).equals(normalizeSQL(parsed)) : sql;
+            }
+
+            String fast = SQLUtils.removeLimitAndAddOrder(sql, true, StudentDO.class);
+            String parsed = (String) invokeSQLUtils("_removeLimitAndAddOrder",
+                    new Class[]{String.class, boolean.class, Class.class}, sql, true, StudentDO.class);
+            assert normalizeSQL(fast).equals(normalizeSQL(parsed)) : sql;
+        }
+
+        // 不认识的子句、子查询、注释等交给JSqlParser
+        List<String> notSimpleSqls = ListUtils.newList(
+                "where a=1 settings max_threads=1",
+                "where a=1 limit 10 settings max_threads=1",
+                "where a in (select id from t)",
+                "where a=1 -- comment",
+                "where a=1; delete from t",
+                "where a=1 order by id limit 1 offset 2 limit 3",
+                "where create_time > now() - interval 1 day",
+                "where (a=1");
+        for (String sql : notSimpleSqls) {
+            assert parseSimpleWhereSQL(sql) == null : sql;
+        }
+    }
+
 }
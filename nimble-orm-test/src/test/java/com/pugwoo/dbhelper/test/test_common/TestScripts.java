@@ -132,6 +132,36 @@ public class TestScripts {
         assert i == 1;
     }
 
+    @Test
+    public void testScriptVariables() {
+        StudentRawDO student = new StudentRawDO();
+        student.setId(3L);
+        student.setName("nick");
+
+        // 同一个线程重复执行，变量t每次都是传入的对象
+        assert "nick".equals(ScriptUtils.getValueFromScript(student, false, "t.name"));
+        StudentRawDO student2 = new StudentRawDO();
+        student2.setName("nick2");
+        assert "nick2".equals(ScriptUtils.getValueFromScript(student2, false, "t.name"));
+
+        // 脚本中的局部变量不会带到下一次执行
+        assert Long.valueOf(6).equals(ScriptUtils.getValueFromScript(student, false, "x = 2; x * t.id"));
+        assert Boolean.FALSE.equals(ScriptUtils.getValueFromScript(student, false, "isdef x"));
+
+        // 脚本中嵌套执行脚本
+        assert "nick-4".equals(ScriptUtils.getValueFromScript(student, false,
+                "t.name + '-' + com.pugwoo.dbhelper.utils.ScriptUtils.executeScript(t.name, 't.length()')"));
+        assert "nick".equals(ScriptUtils.getValueFromScript(student, false, "t.name"));
+
+        // 关闭缓存时每次都重新编译，结果不变
+        DBHelper.disableCache();
+        try {
+            assert "nick".equals(ScriptUtils.getValueFromScript(student, false, "t.name"));
+        } finally {
+            DBHelper.enableCache();
+        }
+    }
+
 
     @Table("t_student")
     public static class StudentRawDO {
@@ -1,6 +1,7 @@
 package com.pugwoo.dbhelper.test.test_common;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
 import com.pugwoo.dbhelper.test.entity.SchoolDO;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
 import com.pugwoo.dbhelper.test.entity.StudentHardDeleteDO;
@@ -11,6 +12,7 @@ import com.pugwoo.wooutils.collect.MapUtils;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.util.HashMap;
 import java.util.List;
@@ -26,6 +28,8 @@ public class TestStream {
 
     @Autowired
     private DBHelper dbHelper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @Test
     public void testGetAllStream() {
@@ -147,4 +151,35 @@ public class TestStream {
 
     }
 
+    @Test
+    public void testStreamFetchSizeNotShared() {
+        int fetchSize = jdbcTemplate.getFetchSize();
+
+        SpringJdbcDBHelper streamDBHelper = new SpringJdbcDBHelper(jdbcTemplate);
+        streamDBHelper.setFetchSize(3);
+
+        String prefix = UUID.randomUUID().toString().replace("-", "");
+        List<StudentDO> students = CommonOps.insertBatch(dbHelper, 7, prefix);
+
+        // fetchSize只设置到流式查询自己的statement上，不修改共享的jdbcTemplate；用完关闭stream以释放连接
+        try (Stream<StudentDO> stream = streamDBHelper.getAllForStream(StudentDO.class,
+                "where name like ?", prefix + "%")) {
+            assert stream.count() == 7;
+        }
+        assert jdbcTemplate.getFetchSize() == fetchSize;
+
+        try (Stream<StudentDO> stream = streamDBHelper.getRawForStream(StudentDO.class,
+                "select * from t_student where deleted=0 and name like ? and id in (?)",
+                prefix + "%", ListUtils.transform(students, StudentDO::getId))) {
+            assert stream.count() == 7;
+        }
+        assert jdbcTemplate.getFetchSize() == fetchSize;
+
+        // 流式查询过程中，同一线程的普通查询不受影响
+        try (Stream<StudentDO> stream = streamDBHelper.getAllForStream(StudentDO.class,
+                "where name like ?", prefix + "%")) {
+            assert stream.filter(o -> streamDBHelper.getByKey(StudentDO.class, o.getId()) != null).count() == 7;
+        }
+    }
+
 }
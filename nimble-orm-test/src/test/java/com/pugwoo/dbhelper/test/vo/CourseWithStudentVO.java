@@ -0,0 +1,14 @@
+package com.pugwoo.dbhelper.test.vo;
+
+import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.test.entity.CourseDO;
+import com.pugwoo.dbhelper.test.entity.StudentDO;
+import lombok.Data;
+
+@Data
+public class CourseWithStudentVO extends CourseDO {
+
+    @RelatedColumn(localColumn = "student_id", remoteColumn = "id")
+    private StudentDO studentDO;
+
+}
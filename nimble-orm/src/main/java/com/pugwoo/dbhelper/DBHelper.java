@@ -1,8 +1,10 @@
 package com.pugwoo.dbhelper;
 
 import com.pugwoo.dbhelper.enums.FeatureEnum;
+import com.pugwoo.dbhelper.enums.PageCountModeEnum;
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
 import com.pugwoo.dbhelper.impl.DBHelperContext;
+import com.pugwoo.dbhelper.model.CursorPageData;
 import com.pugwoo.dbhelper.model.PageData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +13,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
 /**
@@ -51,6 +55,35 @@ public interface DBHelper {
 		}
 	}
 
+	// =============== Select Columns ======================================
+
+	/**
+	 * 只查询指定类的部分字段，适合于表中有大的TEXT/JSON字段而列表页不需要的场景；执行完成后会自动还原。<br>
+	 * 主键总是会查询；没有查询的字段保持为null。对这些类的@RelatedColumn关联查询同样生效，关联匹配用到的远程字段会自动查询。<br>
+	 * 说明：查询本类的@RelatedColumn时，本类的localColumn对应的字段需要包含在内。
+	 * @param selectColumns key是DO类，value是要查询的字段的Java属性名
+	 * @param runnable 要执行的代码
+	 */
+	static void withSelectColumns(Map<Class<?>, ? extends Collection<String>> selectColumns, Runnable runnable) {
+		if (runnable == null) {
+			LOGGER.error("withSelectColumns runnable is null");
+			return;
+		}
+		Map<Class<?>, Set<String>> oldSelectColumns = new HashMap<>();
+		if (selectColumns != null) {
+			selectColumns.forEach((clazz, fieldNames) -> {
+				oldSelectColumns.put(clazz, DBHelperContext.getSelectColumns(clazz));
+				DBHelperContext.setSelectColumns(clazz, fieldNames);
+			});
+		}
+
+		try {
+			runnable.run();
+		} finally {
+			oldSelectColumns.forEach(DBHelperContext::setSelectColumns);
+		}
+	}
+
 	// ================= Set SQL comment ==================================
 
 	/**
@@ -144,11 +177,66 @@ public interface DBHelper {
 	void setMaxPageSize(int maxPageSize);
 
 	/**
-	 * 对于流式Stream获取数据的，可以指定fetchSize大小，默认1000
+	 * 对于流式Stream获取数据的，可以指定fetchSize大小，默认1000；也可以通过@Table的streamFetchSize为每个类单独指定
 	 * @param fetchSize fetchSize
 	 */
 	void setFetchSize(int fetchSize);
 
+	/**
+	 * 设置getPage并行查询总数的线程池，设置后getPage的总数查询和数据查询会并行执行，占用两个数据库连接。<br>
+	 * 当前线程在事务中时，仍然顺序执行。默认为null，即不并行。
+	 * @param executor 执行总数查询的线程池，JDK21及以上也可以使用虚拟线程的Executor
+	 */
+	void setPageCountExecutor(Executor executor);
+
+	/**
+	 * 设置并行查询@RelatedColumn的线程池，设置后一个类有多个@RelatedColumn时，各个关联查询会并行执行，
+	 * 会同时占用多个数据库连接。当前线程在事务中时，仍然顺序执行。默认为null，即不并行。
+	 * @param executor 执行关联查询的线程池，建议使用有界的线程池
+	 */
+	void setRelatedColumnExecutor(Executor executor);
+
+	/**
+	 * 设置@RelatedColumn关联查询和getByKeys时in (...)的最大值个数，超过时拆分成多个查询再合并结果，默认1000；
+	 * 设置了setRelatedColumnExecutor时，拆分后的查询也会并行执行。
+	 * @param maxInSize in的最大值个数，0表示不拆分
+	 */
+	void setMaxRelatedColumnInSize(int maxInSize);
+
+	/**
+	 * 设置合并并发的@RelatedColumn dataService查询，默认不合并。<br>
+	 * 合并时，多个线程对同一个dataService和RelatedColumn的查询，在batchMillis毫秒内或值个数达到maxBatchSize时，
+	 * 去重后只调用一次IDBHelperDataService.get，再把结果分给各个线程；代价是每次查询最多多等待batchMillis毫秒。<br>
+	 * get在批次中第一个线程里调用，所以只合并自定义表名、只查询的字段和SQL注释都相同的查询。
+	 * @param batchMillis 收集查询的毫秒数，0表示不合并
+	 * @param maxBatchSize 每批最多的值个数，达到后立即查询，0表示不限制
+	 */
+	void setDataServiceBatch(int batchMillis, int maxBatchSize);
+
+	/**
+	 * 设置PageCountModeEnum.CACHED方式分页时，总数的缓存时间，默认60秒
+	 * @param seconds 缓存秒数
+	 */
+	void setPageCountCacheSeconds(int seconds);
+
+	/**
+	 * 设置开启FeatureEnum.LOG_SQL_AT_INFO_LEVEL时打印sql的采样比例，默认1，即全部打印
+	 * @param sampleRate 采样比例，取值0到1
+	 */
+	void setSqlLogSampleRate(double sampleRate);
+
+	/**
+	 * 设置开启FeatureEnum.LOG_SQL_AT_INFO_LEVEL时，每条sql每秒最多打印的次数，默认0，即不限制
+	 * @param maxPerSecond 每条sql每秒最多打印的次数
+	 */
+	void setSqlLogRateLimit(int maxPerSecond);
+
+	/**
+	 * 设置sql日志中参数的最大字符数，超过时截断，默认10000；集合参数最多打印前100个元素
+	 * @param maxLength 最大字符数，0表示不限制
+	 */
+	void setMaxSqlLogArgsLength(int maxLength);
+
 	/**
 	 * 设置SQL执行超时回调，可用于自行实现将慢sql存放到db
 	 * @param callback 执行的回调方法
@@ -172,6 +260,17 @@ public interface DBHelper {
 	 */
     <T> T getByKey(Class<T> clazz, Object keyValue) throws NullKeyValueException;
 
+	/**
+	 * 按多个主键查询，返回主键值到对象的Map，顺序和keyValues一致，不存在的主键不在Map中<br>
+	 * 【会自动处理软删除记录】<br>
+	 * 多个主键时，keyValues的元素是按主键字段顺序的List。主键个数超过setMaxRelatedColumnInSize时拆分成多个查询，
+	 * 设置了setRelatedColumnExecutor时并行查询；@RelatedColumn在全部查询完之后统一处理一次。
+	 * @param clazz 查询的DO的类class
+	 * @param keyValues 查询的主键key值，null值会被忽略
+	 * @return key是keyValues中的主键值，不会返回null
+	 */
+	<T, K> Map<K, T> getByKeys(Class<T> clazz, Collection<K> keyValues);
+
 	/**
 	 * 查询列表，没有查询条件<br>
 	 * 【会自动处理软删除记录】
@@ -194,6 +293,34 @@ public interface DBHelper {
 	 */
 	<T> PageData<T> getPage(Class<T> clazz, int page, int pageSize, String postSql, Object... args);
 
+	/**
+	 * 查询列表，postSql可以带查询条件，可以指定总数的计算方式，例如使用缓存或估算的总数<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-支持@JoinTable-】
+	 * @param countMode 总数的计算方式，为null时等同于EXACT
+	 * @param page 从1开始
+	 * @param pageSize 每页查询个数
+	 * @param postSql 包含where关键字起的后续SQL语句，【不能】包含limit子句
+	 * @param args postSql中的参数列表
+	 * @return 返回的data不会是null
+	 */
+	<T> PageData<T> getPage(Class<T> clazz, PageCountModeEnum countMode, int page, int pageSize,
+							String postSql, Object... args);
+
+	/**
+	 * 查询列表，只查询指定的字段和主键，其它字段为null，适合于不需要大字段的列表页<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-支持@JoinTable-】，join类时请使用withSelectColumns指定左右表的字段
+	 * @param fieldNames 要查询的字段的Java属性名
+	 * @param page 从1开始
+	 * @param pageSize 每页查询个数
+	 * @param postSql 包含where关键字起的后续SQL语句，【不能】包含limit子句
+	 * @param args postSql中的参数列表
+	 * @return 返回的data不会是null
+	 */
+	<T> PageData<T> getPageWithColumns(Class<T> clazz, Collection<String> fieldNames, int page, int pageSize,
+									   String postSql, Object... args);
+
 	/**
 	 * 计算总数<br>
 	 * 【会自动处理软删除记录】
@@ -233,6 +360,43 @@ public interface DBHelper {
 	 */
 	<T> PageData<T> getPageWithoutCount(Class<T> clazz, int page, int pageSize, String postSql, Object... args);
 
+	/**
+	 * 游标分页(keyset分页)查询，按主键升序，用 主键&gt;上一页最后一条的主键 的条件代替offset，深分页时也不需要扫描前面的数据<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 注解了@Table的类，【不支持@JoinTable】
+	 * @param cursor 上一页返回的nextCursor，查询第一页时传null
+	 * @param pageSize 每页查询个数
+	 * @param postSql 包含where关键字的查询条件，【不能】包含group by/having/order by/limit子句
+	 * @param args postSql中的参数列表
+	 * @return 返回的data不会是null，total固定为-1；nextCursor为null时表示没有下一页
+	 */
+	<T> CursorPageData<T> getPageByCursor(Class<T> clazz, String cursor, int pageSize, String postSql, Object... args);
+
+	/**
+	 * 游标分页(keyset分页)查询，没有查询条件，按主键升序<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 注解了@Table的类，【不支持@JoinTable】
+	 * @param cursor 上一页返回的nextCursor，查询第一页时传null
+	 * @param pageSize 每页查询个数
+	 * @return 返回的data不会是null，total固定为-1；nextCursor为null时表示没有下一页
+	 */
+	<T> CursorPageData<T> getPageByCursor(Class<T> clazz, String cursor, int pageSize);
+
+	/**
+	 * 游标分页(keyset分页)查询，按指定的游标列升序<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 注解了@Table的类，【不支持@JoinTable】
+	 * @param cursorColumns 游标列的列名，多列组合起来必须唯一且值不能为null(为null时抛出InvalidParameterException)，
+	 *                      例如create_time,id；为空时使用主键列
+	 * @param cursor 上一页返回的nextCursor，查询第一页时传null
+	 * @param pageSize 每页查询个数
+	 * @param postSql 包含where关键字的查询条件，【不能】包含group by/having/order by/limit子句
+	 * @param args postSql中的参数列表
+	 * @return 返回的data不会是null，total固定为-1；nextCursor为null时表示没有下一页
+	 */
+	<T> CursorPageData<T> getPageByCursor(Class<T> clazz, List<String> cursorColumns, String cursor,
+										  int pageSize, String postSql, Object... args);
+
 	/**
 	 * 查询列表，查询所有记录，如果数据量大请慎用<br>
 	 * 【会自动处理软删除记录】
@@ -243,7 +407,7 @@ public interface DBHelper {
 
 	/**
 	 * 查询列表，查询所有记录，以Stream形式返回<br>
-	 * 【特别注意】为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
+	 * 【特别注意】MySQL在事务中使用Stream方式查询时，为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
 	 * 说明：可以通过setFetchSize方法修改流式获取数据时，每次获取的数据条数<br>
 	 * 说明：Stream方式不会调用拦截器的afterQuery<br>
 	 * 【会自动处理软删除记录】
@@ -261,9 +425,19 @@ public interface DBHelper {
 	 */
 	<T> List<T> getAll(Class<T> clazz, String postSql, Object... args);
 
+	/**
+	 * 查询列表，只查询指定的字段和主键，其它字段为null，postSql指定查询where及order by limit等后续语句。<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-支持@JoinTable-】，join类时请使用withSelectColumns指定左右表的字段
+	 * @param fieldNames 要查询的字段的Java属性名
+	 * @param postSql where及后续语句，可包含order by,group by,limit等语句
+	 * @return 返回不会是null
+	 */
+	<T> List<T> getAllWithColumns(Class<T> clazz, Collection<String> fieldNames, String postSql, Object... args);
+
 	/**
 	 * 查询列表，查询所有记录，postSql指定查询where及order by limit等后续语句。以Stream形式返回<br>
-	 * 【特别注意】为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
+	 * 【特别注意】MySQL在事务中使用Stream方式查询时，为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
 	 * 说明：可以通过setFetchSize方法修改流式获取数据时，每次获取的数据条数<br>
 	 *  说明：Stream方式不会调用拦截器的afterQuery<br>
 	 * 【会自动处理软删除记录】
@@ -322,7 +496,7 @@ public interface DBHelper {
 
 	/**
 	 * 执行自行指定的SQL查询语句，以流Stream的形式返回。<br>
-	 * 【特别注意】为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
+	 * 【特别注意】MySQL在事务中使用Stream方式查询时，为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
 	 * 说明：可以通过setFetchSize方法修改流式获取数据时，每次获取的数据条数<br>
 	 * 说明：Stream方式不会调用拦截器的afterQuery<br>
 	 * @param clazz 转换回来的DO类，也支持关联查询后处理；支持基本类型如Integer/Long/String等; 特别说明，对于Long和Integer，如果数据库返回的是null，由于ResultSet的getInt会返回0，所以这里也返回0
@@ -333,7 +507,7 @@ public interface DBHelper {
 
 	/**
 	 * 执行自行指定的SQL查询语句，支持通过namedParameter的方式传入参数，放到args里面，以流Stream的形式返回。<br>
-	 * 【特别注意】为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
+	 * 【特别注意】MySQL在事务中使用Stream方式查询时，为了确保Stream方式查询有效，请确保jdbc的URL参数带上：useCursorFetch=true<br>
 	 * 说明：可以通过setFetchSize方法修改流式获取数据时，每次获取的数据条数<br>
 	 * 说明：Stream方式不会调用拦截器的afterQuery<br>
 	 * @param clazz 转换回来的DO类，也支持关联查询后处理；支持基本类型如Integer/Long/String等; 特别说明，对于Long和Integer，如果数据库返回的是null，由于ResultSet的getInt会返回0，所以这里也返回0
@@ -417,6 +591,21 @@ public interface DBHelper {
 	 */
 	<T> void handleRelatedColumn(List<T> list, String... relatedColumnProperties);
 
+	/**
+	 * 加载@Column(lazy=true)的延迟加载字段，按主键一次查询出来，参数t需要有主键值
+	 * @param t 需要加载延迟字段的对象
+	 * @param lazyColumnProperties 只加载指定的这些延迟字段，值是成员变量的名称；不指定时加载全部延迟字段
+	 */
+	<T> void handleLazyColumns(T t, String... lazyColumnProperties);
+
+	/**
+	 * 加载@Column(lazy=true)的延迟加载字段，按主键批量查询出来，in的值太多时按setMaxRelatedColumnInSize拆分查询。
+	 * 要求list都是同一class类型且有主键值的对象。
+	 * @param list 需要加载延迟字段的对象列表
+	 * @param lazyColumnProperties 只加载指定的这些延迟字段，值是成员变量的名称；不指定时加载全部延迟字段
+	 */
+	<T> void handleLazyColumns(List<T> list, String... lazyColumnProperties);
+
 	// ===============Query methods END ==================================
 
 	/**
@@ -476,7 +665,7 @@ public interface DBHelper {
 	<T> int insertOrUpdate(Collection<T> list);
 
 	/**
-	 * 更新单个实例数据库记录，必须带上object的key，包含更新null值的字段
+	 * 更新单个实例数据库记录，必须带上object的key，包含更新null值的字段；值为null的@Column(lazy=true)延迟字段除外
 	 * @param t 更新的对象实例
 	 * @return 返回数据库实际修改条数
 	 * @throws NullKeyValueException 当对象t的主键值为null时抛出
@@ -28,6 +28,14 @@ public @interface Column {
 	 */
 	boolean isJSON() default false;
 	
+	/**
+	 * 延迟加载，适用于大的TEXT/BLOB/JSON列。普通查询不会select该列，该字段保持为null，
+	 * 需要时通过DBHelper.handleLazyColumns按主键批量加载；通过withSelectColumns明确指定该字段时会直接查询。<br>
+	 * 说明：对主键列不生效。<br>
+	 * 说明：updateWithNull时值为null的延迟字段不会更新，需要把该列更新为null时请使用updateCustom或executeRaw。
+	 */
+	boolean lazy() default false;
+
 	/**
 	 * 计算列。注意：计算列的别名为value属性的值，不需要再写上as 别名。
 	 */
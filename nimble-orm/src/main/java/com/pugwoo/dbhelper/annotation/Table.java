@@ -65,4 +65,29 @@ public @interface Table {
 	 * 表注释
 	 */
 	String comment() default "";
+
+	/**
+	 * 流式查询(getAllForStream/getRawForStream)时每次获取的数据条数，大于0时生效，否则使用DBHelper.setFetchSize设置的值
+	 */
+	int streamFetchSize() default 0;
+
+	/**
+	 * getByKey的实体缓存秒数，大于0时开启，默认0不缓存；适合按主键读多写少的配置表、字典表。<br>
+	 * 通过DBHelper按对象修改、删除时失效对应主键的缓存，updateAll、按条件删除和executeRaw时失效整个表的缓存，在事务中时提交后会再失效一次；
+	 * 同一个表的其它DO类只在该表已经有缓存时才会失效它，不通过DBHelper修改数据时不会失效。事务中不使用缓存；
+	 * 缓存的是拦截器afterSelect处理前的数据，每次返回时(包括命中缓存)对返回的对象执行一次拦截器和处理@RelatedColumn。
+	 */
+	int cacheSeconds() default 0;
+
+	/**
+	 * getByKey的实体缓存最多缓存的主键个数，默认1000，cacheSeconds大于0时生效
+	 */
+	int cacheSize() default 1000;
+
+	/**
+	 * getAll/getPage/getOne/getCount的查询结果缓存秒数，大于0时开启，默认0不缓存；缓存的key是最终的SQL和参数。<br>
+	 * 通过DBHelper插入、修改、删除或executeRaw修改该表后，该表的所有查询结果缓存都失效，在事务中时提交后会再失效一次；
+	 * 不通过DBHelper修改数据时不会失效。事务中不使用缓存；命中缓存时仍然会处理@RelatedColumn和拦截器的afterSelect。
+	 */
+	int queryCacheSeconds() default 0;
 }
@@ -4,6 +4,8 @@ import com.pugwoo.dbhelper.annotation.Column;
 import com.pugwoo.dbhelper.annotation.RelatedColumn;
 import com.pugwoo.dbhelper.annotation.Table;
 import com.pugwoo.dbhelper.impl.DBHelperContext;
+import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.FieldAccessor;
 import com.pugwoo.dbhelper.utils.InnerCommonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -112,6 +114,26 @@ public class ClassInfoCache {
 
     // ==================================================================================
 
+    private static final Map<Field, FieldAccessor> fieldAccessorMap = new ConcurrentHashMap<>();
+
+    /**
+     * 获得field对应的读写器，开启缓存时每个字段只生成一次；不开启缓存时每次都返回基于反射的读写器
+     */
+    public static FieldAccessor getFieldAccessor(Field field) {
+        if (!DBHelperContext.isCacheEnabled()) {
+            return FieldAccessor.create(field, false);
+        }
+
+        FieldAccessor accessor = fieldAccessorMap.get(field);
+        if (accessor == null) {
+            accessor = FieldAccessor.create(field, true);
+            fieldAccessorMap.put(field, accessor);
+        }
+        return accessor;
+    }
+
+    // ==================================================================================
+
     private static final Map<Class<?>, List<Field>> classFieldMap = new ConcurrentHashMap<>();
 
     /**
@@ -138,6 +160,31 @@ public class ClassInfoCache {
         return fields;
     }
 
+    private static final Map<Class<?>, List<Field>> classNonLazyFieldMap = new ConcurrentHashMap<>();
+
+    /**
+     * 获得clazz的所有非延迟加载的Column字段，用于普通查询时的select
+     */
+    public static List<Field> getNonLazyColumnFields(Class<?> clazz) {
+        List<Field> fields;
+        boolean isCacheEnable = DBHelperContext.isCacheEnabled();
+
+        if (isCacheEnable) {
+            fields = classNonLazyFieldMap.get(clazz);
+            if (fields != null) {
+                return fields;
+            }
+        }
+
+        fields = InnerCommonUtils.filter(getColumnFields(clazz), o -> !DOInfoReader.isLazyColumn(o));
+
+        if (isCacheEnable) {
+            classNonLazyFieldMap.put(clazz, fields);
+        }
+
+        return fields;
+    }
+
     /**
      * 获得指定类及其父类的列表，子类在前，父类在后
      * @param clazz 要查询的类
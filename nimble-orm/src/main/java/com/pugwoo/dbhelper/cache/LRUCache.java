@@ -0,0 +1,46 @@
+package com.pugwoo.dbhelper.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 线程安全的定长LRU缓存，超过容量时淘汰最久未访问的数据。<br>
+ * 适用于key来自于用户输入、数量不可控的场景，例如postSql。
+ */
+public class LRUCache<K, V> {
+
+    private final Map<K, V> map;
+
+    public LRUCache(int maxSize) {
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的值，不存在返回null
+     */
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+}
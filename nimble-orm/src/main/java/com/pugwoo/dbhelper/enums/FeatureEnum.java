@@ -30,4 +30,24 @@ public enum FeatureEnum {
      * 是否自动对慢SQL进行explain分析，默认[开启]
      */
     AUTO_EXPLAIN_SLOW_SQL,
+
+    /**
+     * 分页查询第2页及以后时使用延迟关联，即先只查询主键分页，再用主键in查询完整数据，默认[关闭]；
+     * 只对单主键的@Table类且postSql没有group by时生效，order by不能使用计算列的别名；适合字段多或有大字段的表的深分页。
+     * 设置了拦截器时不生效，仍使用普通的分页查询，以便拦截器拿到原始的sql和参数
+     */
+    DEFERRED_JOIN_FOR_PAGINATION,
+
+    /**
+     * MySQL流式查询不在事务中时，使用Integer.MIN_VALUE的fetchSize逐行读取结果，避免驱动把结果全部读到内存，默认[开启]；
+     * 关闭时使用setFetchSize的值，此时需要jdbc url带上useCursorFetch=true才是流式的
+     */
+    MYSQL_STREAM_RESULT_SET,
+
+    /**
+     * RelatedColumn的extraWhere带limit时，MySQL 8及以上用ROW_NUMBER()窗口函数、ClickHouse用LIMIT n BY，
+     * 一次查询出每个关联值的前N条数据，默认[关闭]；关闭或不支持时按每个关联值逐个查询。
+     * 设置了拦截器时不生效，仍按每个关联值逐个查询，以便经过拦截器
+     */
+    RELATED_COLUMN_LIMIT_IN_ONE_QUERY,
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.pugwoo.dbhelper.enums;
+
+/**
+ * 分页查询时总数的计算方式
+ */
+public enum PageCountModeEnum {
+
+    /**
+     * 每次都查询准确的总数，和getPage一致
+     */
+    EXACT,
+
+    /**
+     * 使用缓存的总数，缓存按查询条件和参数区分，缓存时间通过setPageCountCacheSeconds设置，默认60秒；
+     * 缓存过期前的总数可能不是最新的
+     */
+    CACHED,
+
+    /**
+     * 使用数据库的估算值作为总数：MySQL没有查询条件时使用information_schema.TABLES，有查询条件时使用EXPLAIN的估算行数；
+     * ClickHouse没有查询条件时使用system.parts，其它情况查询准确的总数。估算值可能和实际总数有较大误差
+     */
+    ESTIMATED,
+}
@@ -9,14 +9,19 @@ import java.math.BigInteger;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DBHelper线程上下文，支持: <br>
  * 1. 自定义表名<br>
- * 2. 线程级别的SQL注释
+ * 2. 线程级别的SQL注释<br>
+ * 3. 只查询指定的字段
  */
 public class DBHelperContext {
 
@@ -25,6 +30,9 @@ public class DBHelperContext {
     /**自定义表名，适合于分表场景*/
     private static final ThreadLocal<Map<Class<?>, String>> tableNames = new ThreadLocal<>();
 
+    /**只查询指定的字段，key是DO类，value是字段的Java属性名*/
+    private static final ThreadLocal<Map<Class<?>, Set<String>>> selectColumns = new ThreadLocal<>();
+
     /**全局的SQL注释*/
     private static String globalComment;
     /**线程上下文注释*/
@@ -95,6 +103,14 @@ public class DBHelperContext {
         return tableNames.get(clazz);
     }
 
+    /**
+     * 获得当前线程的所有自定义表名，没有设置时返回null；返回的map请勿修改
+     */
+    public static Map<Class<?>, String> getTableNames() {
+        Map<Class<?>, String> tableNames = DBHelperContext.tableNames.get();
+        return tableNames == null || tableNames.isEmpty() ? null : tableNames;
+    }
+
     /**
      * 设置类对应的自定义表名
      * @param tableName 不需要加反引号`，如果为null表示清除自定义表名
@@ -129,6 +145,52 @@ public class DBHelperContext {
         tableNames.set(null);
     }
 
+    /**
+     * 获得类只查询的字段的属性名，没有指定时返回null，表示查询全部字段
+     */
+    public static Set<String> getSelectColumns(Class<?> clazz) {
+        Map<Class<?>, Set<String>> selectColumns = DBHelperContext.selectColumns.get();
+        return selectColumns == null ? null : selectColumns.get(clazz);
+    }
+
+    /**
+     * 获得当前线程的所有只查询字段设置，没有设置时返回null；返回的map请勿修改
+     */
+    public static Map<Class<?>, Set<String>> getSelectColumns() {
+        Map<Class<?>, Set<String>> selectColumns = DBHelperContext.selectColumns.get();
+        return selectColumns == null || selectColumns.isEmpty() ? null : selectColumns;
+    }
+
+    /**
+     * 设置类只查询的字段，主键字段总是会查询
+     * @param fieldNames 字段的Java属性名，为null表示清除设置，即查询全部字段
+     */
+    public static void setSelectColumns(Class<?> clazz, Collection<String> fieldNames) {
+        if (clazz == null) {
+            return;
+        }
+        Map<Class<?>, Set<String>> selectColumns = DBHelperContext.selectColumns.get();
+        if (fieldNames == null) {
+            if (selectColumns != null) {
+                selectColumns.remove(clazz);
+            }
+            return;
+        }
+
+        if (selectColumns == null) {
+            selectColumns = new HashMap<>();
+            DBHelperContext.selectColumns.set(selectColumns);
+        }
+        selectColumns.put(clazz, Collections.unmodifiableSet(new HashSet<>(fieldNames)));
+    }
+
+    /**
+     * 清空只查询字段的设置
+     */
+    public static void resetSelectColumns() {
+        selectColumns.set(null);
+    }
+
     public static void setGlobalComment(String comment) {
         DBHelperContext.globalComment = comment;
     }
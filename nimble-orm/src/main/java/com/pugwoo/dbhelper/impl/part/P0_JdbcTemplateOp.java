@@ -3,6 +3,7 @@ package com.pugwoo.dbhelper.impl.part;
 import com.pugwoo.dbhelper.DBHelper;
 import com.pugwoo.dbhelper.DBHelperInterceptor;
 import com.pugwoo.dbhelper.IDBHelperSlowSqlCallback;
+import com.pugwoo.dbhelper.cache.LRUCache;
 import com.pugwoo.dbhelper.enums.DatabaseEnum;
 import com.pugwoo.dbhelper.enums.FeatureEnum;
 import com.pugwoo.dbhelper.impl.DBHelperContext;
@@ -15,14 +16,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.lang.reflect.Array;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * jdbcTemplate原生操作接口封装
@@ -34,10 +39,23 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 
 	protected JdbcTemplate jdbcTemplate;
 	private DatabaseEnum databaseType; // 数据库类型，从jdbcTemplate的url解析得到；当它为null时，表示未初始化
+	private Integer databaseMajorVersion; // 数据库主版本号，当它为null时，表示未初始化
 	protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 	protected long timeoutWarningValve = 1000;
 	protected Integer maxPageSize = null; // 每页最大个数，为null表示不限制
 	protected int fetchSize = 1000; // Stream流式获取数据的fetchSize大小，默认1000（一般jdbc各数据库驱动的默认值是10，过小了）
+	protected Executor pageCountExecutor = null; // getPage并行查询总数的线程池，为null表示不并行
+	protected Executor relatedColumnExecutor = null; // 并行查询多个RelatedColumn的线程池，为null表示不并行
+	protected int maxRelatedColumnInSize = 1000; // RelatedColumn关联查询时in的最大个数，超过时拆分成多个查询，0表示不限制
+	protected int dataServiceBatchMillis = 0; // 合并并发的RelatedColumn dataService查询的等待毫秒数，0表示不合并
+	protected int dataServiceMaxBatchSize = 1000; // 合并dataService查询时每批最多的值个数，0表示不限制
+	protected int pageCountCacheSeconds = 60; // PageCountModeEnum.CACHED分页总数的缓存秒数
+	protected double sqlLogSampleRate = 1.0; // info级别打印sql的采样比例，1表示全部打印
+	protected int sqlLogRateLimit = 0; // info级别每条sql每秒最多打印的次数，0表示不限制
+	protected int maxSqlLogArgsLength = 10000; // 日志中参数的最大字符数，0表示不限制
+
+	private static final int MAX_LOG_COLLECTION_SIZE = 100; // 日志中集合参数最多打印的元素个数
+	private final LRUCache<String, SqlLogCounter> sqlLogCounters = new LRUCache<>(1024);
 
 	protected ApplicationContext applicationContext;
 
@@ -49,34 +67,133 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		put(FeatureEnum.THROW_EXCEPTION_IF_COLUMN_NOT_EXIST, false);
 		put(FeatureEnum.AUTO_ADD_ORDER_FOR_PAGINATION, true);
 		put(FeatureEnum.AUTO_EXPLAIN_SLOW_SQL, true);
+		put(FeatureEnum.DEFERRED_JOIN_FOR_PAGINATION, false);
+		put(FeatureEnum.MYSQL_STREAM_RESULT_SET, true);
+		put(FeatureEnum.RELATED_COLUMN_LIMIT_IN_ONE_QUERY, false);
 	}};
 
 	private IDBHelperSlowSqlCallback slowSqlCallback;
 
 	/**
-	 * 批量和非批量的log
+	 * 批量和非批量的log，日志级别未开启时不会序列化参数
 	 * @param sql 要log的sql
 	 * @param batchSize 如果大于0，则是批量log方式
 	 * @param args 参数
 	 */
 	protected void log(String sql, int batchSize, Object args) {
-		if (batchSize > 0) { // 批量log
-			if (features.get(FeatureEnum.LOG_SQL_AT_INFO_LEVEL)) {
+		if (features.get(FeatureEnum.LOG_SQL_AT_INFO_LEVEL)) {
+			if (!LOGGER.isInfoEnabled() || !isSqlLogAllowed(sql)) {
+				return;
+			}
+			if (batchSize > 0) { // 批量log
 				LOGGER.info("Batch ExecSQL:{}; batch size:{}, first row params:{}",
-						sql, batchSize, NimbleOrmJSON.toJson(args));
+						sql, batchSize, renderLogArgs(args));
 			} else {
-				LOGGER.debug("Batch ExecSQL:{}; batch size:{}, first row params:{}",
-						sql, batchSize, NimbleOrmJSON.toJson(args));
+				LOGGER.info("ExecSQL:{}; params:{}", sql, renderLogArgs(args));
 			}
 		} else {
-			if (features.get(FeatureEnum.LOG_SQL_AT_INFO_LEVEL)) {
-				LOGGER.info("ExecSQL:{}; params:{}", sql, NimbleOrmJSON.toJson(args));
+			if (!LOGGER.isDebugEnabled()) {
+				return;
+			}
+			if (batchSize > 0) { // 批量log
+				LOGGER.debug("Batch ExecSQL:{}; batch size:{}, first row params:{}",
+						sql, batchSize, renderLogArgs(args));
 			} else {
-				LOGGER.debug("ExecSQL:{}; params:{}", sql, NimbleOrmJSON.toJson(args));
+				LOGGER.debug("ExecSQL:{}; params:{}", sql, renderLogArgs(args));
 			}
 		}
 	}
 
+	/**
+	 * info级别打印sql时的采样和每条sql的限流，用于生产环境开启LOG_SQL_AT_INFO_LEVEL的场景
+	 * @return 是否打印该sql
+	 */
+	private boolean isSqlLogAllowed(String sql) {
+		if (sqlLogSampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sqlLogSampleRate) {
+			return false;
+		}
+		int rateLimit = sqlLogRateLimit;
+		if (rateLimit <= 0 || sql == null) {
+			return true;
+		}
+		SqlLogCounter counter = sqlLogCounters.get(sql);
+		if (counter == null) {
+			counter = new SqlLogCounter();
+			sqlLogCounters.put(sql, counter);
+		}
+		return counter.tryAcquire(System.currentTimeMillis() / 1000, rateLimit);
+	}
+
+	/**
+	 * 将参数转成json用于打印日志，参数中过长的集合只保留前面的元素，转换后的字符串超过maxSqlLogArgsLength时截断
+	 */
+	protected String renderLogArgs(Object args) {
+		String json = NimbleOrmJSON.toJson(shrinkLogArgs(args));
+		int maxLength = maxSqlLogArgsLength;
+		if (json != null && maxLength > 0 && json.length() > maxLength) {
+			return json.substring(0, maxLength) + "...(total " + json.length() + " chars)";
+		}
+		return json;
+	}
+
+	/**
+	 * 截短参数中的集合和数组(例如in (?)的参数)，避免为了打日志而序列化整个大集合
+	 */
+	private static Object shrinkLogArgs(Object args) {
+		if (args instanceof Collection) {
+			Collection<?> collection = (Collection<?>) args;
+			boolean isTooLarge = collection.size() > MAX_LOG_COLLECTION_SIZE;
+			List<Object> result = new ArrayList<>(Math.min(collection.size(), MAX_LOG_COLLECTION_SIZE) + 1);
+			for (Object obj : collection) {
+				if (result.size() >= MAX_LOG_COLLECTION_SIZE) {
+					break;
+				}
+				result.add(shrinkLogArgs(obj));
+			}
+			if (isTooLarge) {
+				result.add("...(total " + collection.size() + " elements)");
+			}
+			return result;
+		}
+		if (args instanceof Object[]) {
+			return shrinkLogArgs(Arrays.asList((Object[]) args));
+		}
+		if (args instanceof Map) { // 命名参数
+			Map<Object, Object> result = new LinkedHashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) args).entrySet()) {
+				result.put(entry.getKey(), shrinkLogArgs(entry.getValue()));
+			}
+			return result;
+		}
+		if (args != null && args.getClass().isArray()) { // 基本类型数组，例如byte[]
+			int length = Array.getLength(args);
+			if (length <= MAX_LOG_COLLECTION_SIZE) {
+				return args;
+			}
+			List<Object> result = new ArrayList<>(MAX_LOG_COLLECTION_SIZE + 1);
+			for (int i = 0; i < MAX_LOG_COLLECTION_SIZE; i++) {
+				result.add(Array.get(args, i));
+			}
+			result.add("...(total " + length + " elements)");
+			return result;
+		}
+		return args;
+	}
+
+	/**每条sql每秒打印的次数计数*/
+	private static class SqlLogCounter {
+		private long second;
+		private int count;
+
+		private synchronized boolean tryAcquire(long currentSecond, int rateLimit) {
+			if (currentSecond != second) {
+				second = currentSecond;
+				count = 0;
+			}
+			return ++count <= rateLimit;
+		}
+	}
+
 	/**
 	 * 记录慢sql请求
 	 * @param cost 请求耗时，毫秒
@@ -89,7 +206,7 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		if(cost > timeoutWarningValve) {
 			if (batchSize > 0) {
 				LOGGER.warn("SlowSQL:{}; cost:{}ms, listSize:{}, params:{}", sql, cost,
-						batchSize, NimbleOrmJSON.toJson(args));
+						batchSize, renderLogArgs(args));
 				try {
 					if(slowSqlCallback != null) {
 						if (args instanceof List) {
@@ -102,10 +219,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 					}
 				} catch (Throwable e) {
 					LOGGER.error("DBHelperSlowSqlCallback fail, SlowSQL:{}; cost:{}ms, listSize:{}, params:{}",
-							sql, cost, batchSize, NimbleOrmJSON.toJson(args), e);
+							sql, cost, batchSize, renderLogArgs(args), e);
 				}
 			} else {
-				LOGGER.warn("SlowSQL:{}; cost:{}ms, params:{}", sql, cost, NimbleOrmJSON.toJson(args));
+				LOGGER.warn("SlowSQL:{}; cost:{}ms, params:{}", sql, cost, renderLogArgs(args));
 				try {
 					if(slowSqlCallback != null) {
 						if (args instanceof List) {
@@ -118,7 +235,7 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 					}
 				} catch (Throwable e) {
 					LOGGER.error("DBHelperSlowSqlCallback fail, SlowSQL:{}; cost:{}ms, params:{}",
-							sql, cost, NimbleOrmJSON.toJson(args), e);
+							sql, cost, renderLogArgs(args), e);
 				}
 
 				// 对于非batch的慢sql，自动explain一下检查是否加了索引
@@ -146,10 +263,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 							explainResult = namedParameterJdbcTemplate.queryForList(explainSql, (Map<String, ?>) args);
 						}
 						LOGGER.warn("Explain SlowSQL:{}; cost:{}ms, params:{} explain result:{}", sql,
-								   cost, NimbleOrmJSON.toJson(args), NimbleOrmJSON.toJson(explainResult));
+								   cost, renderLogArgs(args), NimbleOrmJSON.toJson(explainResult));
 					} catch (Throwable e) {
 						LOGGER.error("SlowSQL explain fail, SlowSQL:{}; cost:{}ms, params:{}",
-								sql, cost, NimbleOrmJSON.toJson(args), e);
+								sql, cost, renderLogArgs(args), e);
 					}
 				}
 			}
@@ -203,9 +320,14 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		if(args != null) {
 			argsList.addAll(Arrays.asList(args));
 		}
-		int rows = namedParameterJdbcTemplate.update(
-				NamedParameterUtils.trans(sql, argsList),
-				NamedParameterUtils.transParam(argsList)); // 因为有in (?) 所以使用namedParameterJdbcTemplate
+		int rows;
+		if (isUsePositionalArgs(sql, argsList)) {
+			rows = jdbcTemplate.update(sql, argsList.toArray());
+		} else {
+			rows = namedParameterJdbcTemplate.update(
+					NamedParameterUtils.trans(sql, argsList),
+					NamedParameterUtils.transParam(argsList)); // 因为有in (?) 所以使用namedParameterJdbcTemplate
+		}
 		long cost = System.currentTimeMillis() - start;
 		logSlow(cost, sql, 0, argsList);
 		return rows;
@@ -227,14 +349,27 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		if(args != null) {
 			argsList.addAll(Arrays.asList(args));
 		}
-		int rows = namedParameterJdbcTemplate.update(
-				NamedParameterUtils.trans(sql, argsList),
-				NamedParameterUtils.transParam(argsList)); // 因为有in (?) 所以使用namedParameterJdbcTemplate
+		int rows;
+		if (isUsePositionalArgs(sql, argsList)) {
+			rows = jdbcTemplate.update(sql, argsList.toArray());
+		} else {
+			rows = namedParameterJdbcTemplate.update(
+					NamedParameterUtils.trans(sql, argsList),
+					NamedParameterUtils.transParam(argsList)); // 因为有in (?) 所以使用namedParameterJdbcTemplate
+		}
 		long cost = System.currentTimeMillis() - start;
 		logSlow(cost, logSql, batchSize, logArgs);
 		return rows;
 	}
 
+	/**
+	 * 参数中没有集合或数组且参数个数和?个数一致时，不需要展开in (?)，可以直接用jdbcTemplate按位置传参，省去命名参数的转换和解析
+	 */
+	protected boolean isUsePositionalArgs(String sql, List<Object> args) {
+		return namedParameterJdbcTemplate.getJdbcOperations() == jdbcTemplate
+				&& !NamedParameterUtils.isNeedNamedParameter(sql, args);
+	}
+
 	public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
 		if (jdbcTemplate == null) {
 			return;
@@ -242,6 +377,7 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		this.jdbcTemplate = jdbcTemplate;
 		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
 		this.databaseType = getDatabaseType(jdbcTemplate);
+		this.databaseMajorVersion = null;
 	}
 
 	/**
@@ -275,6 +411,47 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		this.fetchSize = fetchSize;
 	}
 
+	@Override
+	public void setPageCountExecutor(Executor executor) {
+		this.pageCountExecutor = executor;
+	}
+
+	@Override
+	public void setRelatedColumnExecutor(Executor executor) {
+		this.relatedColumnExecutor = executor;
+	}
+
+	@Override
+	public void setMaxRelatedColumnInSize(int maxInSize) {
+		this.maxRelatedColumnInSize = maxInSize;
+	}
+
+	@Override
+	public void setDataServiceBatch(int batchMillis, int maxBatchSize) {
+		this.dataServiceBatchMillis = batchMillis;
+		this.dataServiceMaxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public void setPageCountCacheSeconds(int seconds) {
+		this.pageCountCacheSeconds = seconds;
+	}
+
+	@Override
+	public void setSqlLogSampleRate(double sampleRate) {
+		this.sqlLogSampleRate = sampleRate;
+	}
+
+	@Override
+	public void setSqlLogRateLimit(int maxPerSecond) {
+		this.sqlLogRateLimit = maxPerSecond;
+	}
+
+	@Override
+	public void setMaxSqlLogArgsLength(int maxLength) {
+		this.maxSqlLogArgsLength = maxLength;
+	}
+
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext)
 			throws BeansException {
@@ -331,7 +508,8 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 
 	private DatabaseEnum getDatabaseType(JdbcTemplate jdbcTemplate) {
 		try {
-			String url = Objects.requireNonNull(jdbcTemplate.getDataSource()).getConnection().getMetaData().getURL();
+			String url = Objects.requireNonNull(jdbcTemplate.execute(
+					(ConnectionCallback<String>) conn -> conn.getMetaData().getURL()));
 			String type = url.split(":")[1];
 			return DatabaseEnum.getByJdbcProtocol(type);
 		} catch (Exception e) {
@@ -346,4 +524,20 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		}
 		return databaseType;
 	}
+
+	/**
+	 * 获取数据库的主版本号，获取失败时返回0
+	 */
+	protected int getDatabaseMajorVersion() {
+		if (databaseMajorVersion == null) {
+			try {
+				databaseMajorVersion = jdbcTemplate.execute(
+						(ConnectionCallback<Integer>) conn -> conn.getMetaData().getDatabaseMajorVersion());
+			} catch (Exception e) {
+				LOGGER.error("fail to get database major version, jdbcTemplate:{}, will try later", jdbcTemplate, e);
+				return 0;
+			}
+		}
+		return databaseMajorVersion == null ? 0 : databaseMajorVersion;
+	}
 }
@@ -5,9 +5,16 @@ import com.pugwoo.dbhelper.IDBHelperDataService;
 import com.pugwoo.dbhelper.annotation.Column;
 import com.pugwoo.dbhelper.annotation.JoinTable;
 import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.annotation.Table;
+import com.pugwoo.dbhelper.cache.ClassInfoCache;
+import com.pugwoo.dbhelper.cache.LRUCache;
+import com.pugwoo.dbhelper.enums.DatabaseEnum;
 import com.pugwoo.dbhelper.enums.FeatureEnum;
+import com.pugwoo.dbhelper.enums.PageCountModeEnum;
 import com.pugwoo.dbhelper.exception.*;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
 import com.pugwoo.dbhelper.json.NimbleOrmJSON;
+import com.pugwoo.dbhelper.model.CursorPageData;
 import com.pugwoo.dbhelper.model.PageData;
 import com.pugwoo.dbhelper.sql.SQLAssert;
 import com.pugwoo.dbhelper.sql.SQLUtils;
@@ -15,11 +22,36 @@ import com.pugwoo.dbhelper.utils.AnnotationSupportRowMapper;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
 import com.pugwoo.dbhelper.utils.InnerCommonUtils;
 import com.pugwoo.dbhelper.utils.NamedParameterUtils;
+import com.pugwoo.dbhelper.utils.ScriptUtils;
 import net.sf.jsqlparser.JSQLParserException;
-import org.mvel2.MVEL;
-
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
@@ -33,9 +65,414 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         SQLAssert.onlyOneKeyColumn(clazz);
 
         String where = SQLUtils.getKeysWhereSQLWithoutSoftDelete(clazz);
+        if (DOInfoReader.getTable(clazz).cacheSeconds() > 0 && DBHelperContext.getSelectColumns(clazz) == null
+                && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return getByKeyWithEntityCache(clazz, keyValue, where);
+        }
         return getOne(clazz, where, keyValue);
     }
 
+    @Override
+    public <T, K> Map<K, T> getByKeys(Class<T> clazz, Collection<K> keyValues) {
+        return getByKeys(clazz, keyValues, true);
+    }
+
+    private <T, K> Map<K, T> getByKeys(Class<T> clazz, Collection<K> keyValues, boolean isHandleRelatedColumn) {
+        assertNotVirtualTable(clazz);
+        Map<K, T> result = new LinkedHashMap<>();
+        if (keyValues == null || keyValues.isEmpty()) {
+            return result;
+        }
+
+        List<Field> keyColumns = DOInfoReader.getKeyColumns(clazz);
+        Set<Object> keys = new LinkedHashSet<>();
+        for (K keyValue : keyValues) {
+            if (keyValue == null) {
+                continue;
+            }
+            if (keyColumns.size() > 1 && !(keyValue instanceof List && ((List<?>) keyValue).size() == keyColumns.size())) {
+                throw new InvalidParameterException("key value of class:" + clazz.getName()
+                        + " must be a List of " + keyColumns.size() + " key values, but got:" + keyValue);
+            }
+            keys.add(keyValue);
+        }
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        StringBuilder keyColumn = new StringBuilder(keyColumns.size() == 1 ? "" : "(");
+        for (int i = 0; i < keyColumns.size(); i++) {
+            keyColumn.append(i > 0 ? "," : "").append(SQLUtils.getColumnName(keyColumns.get(i)));
+        }
+        keyColumn.append(keyColumns.size() == 1 ? "" : ")");
+
+        // in的值太多时拆分成多个查询，RelatedColumn在全部查询完之后统一处理
+        List<Supplier<List<?>>> queries = new ArrayList<>();
+        for (Set<Object> chunk : splitRelatedValues(keys)) {
+            String where = "WHERE " + keyColumn + " in " + buildQuestionMark(chunk);
+            queries.add(() -> getAllForRelatedColumn(clazz, where, chunk, false));
+        }
+        List<T> list = new ArrayList<>();
+        for (List<?> rows : runRelatedQueries(queries)) {
+            for (Object row : rows) {
+                list.add(clazz.cast(row));
+            }
+        }
+        if (isHandleRelatedColumn) {
+            handleRelatedColumn(list);
+        }
+
+        Map<Object, T> rowMap = new HashMap<>();
+        Map<String, T> rowStringMap = new HashMap<>();
+        for (T t : list) {
+            Object keyValue = getKeyValueForKeys(keyColumns, t);
+            rowMap.putIfAbsent(keyValue, t);
+            rowStringMap.putIfAbsent(String.valueOf(keyValue), t);
+        }
+        for (Object keyValue : keys) {
+            T t = rowMap.get(keyValue);
+            if (t == null) {
+                t = rowStringMap.get(keyValue.toString());
+            }
+            if (t != null) {
+                @SuppressWarnings("unchecked")
+                K key = (K) keyValue;
+                result.put(key, t);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获得对象的主键值，和getByKeys的参数格式一致：单个主键时是主键值，多个主键时是主键值的List
+     */
+    private static Object getKeyValueForKeys(List<Field> keyColumns, Object t) {
+        if (keyColumns.size() == 1) {
+            return DOInfoReader.getValue(keyColumns.get(0), t);
+        }
+        List<Object> values = new ArrayList<>();
+        for (Field field : keyColumns) {
+            values.add(DOInfoReader.getValue(field, t));
+        }
+        return values;
+    }
+
+    // ======================= getByKey的实体缓存和查询结果缓存 ========================
+
+    /**getByKey的实体缓存，key是表名*/
+    private final Map<String, EntityCache> entityCaches = new ConcurrentHashMap<>();
+
+    private static class EntityCache {
+        /**key是主键值的字符串，值是各个DO类的缓存实体，同一个表的不同DO类共用一份失效*/
+        private final LRUCache<String, Map<Class<?>, CachedEntity>> entities;
+        /**每次失效时加1，查询前后不一致说明查询期间数据被修改了，此时查询结果不放入缓存*/
+        private volatile long version;
+
+        private EntityCache(int size) {
+            this.entities = new LRUCache<>(size);
+        }
+    }
+
+    private static class CachedEntity {
+        private final Object entity;
+        private final long expireTime;
+
+        private CachedEntity(Object entity, long expireTime) {
+            this.entity = entity;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * 缓存的是拦截器afterSelect和处理@RelatedColumn之前的数据，命中与否都对返回的对象执行一次拦截器和@RelatedColumn
+     */
+    private <T> T getByKeyWithEntityCache(Class<T> clazz, Object keyValue, String where) {
+        Table table = DOInfoReader.getTable(clazz);
+        EntityCache cache = entityCaches.computeIfAbsent(getCacheTableName(clazz),
+                k -> new EntityCache(table.cacheSize()));
+        String key = keyValue.toString();
+
+        String sql = SQLUtils.getSelectSQL(clazz, false, false, features, where)
+                + SQLUtils.autoSetSoftDeleted(where, clazz);
+        List<Object> argsList = new ArrayList<>();
+        argsList.add(keyValue);
+        doInterceptBeforeQuery(clazz, sql, argsList);
+
+        List<T> list = new ArrayList<>();
+        Map<Class<?>, CachedEntity> cached = cache.entities.get(key);
+        CachedEntity cachedEntity = cached == null ? null : cached.get(clazz);
+        if (cachedEntity != null && cachedEntity.expireTime > System.currentTimeMillis()) {
+            list.add(copyColumns(clazz, cachedEntity.entity));
+        } else {
+            long version = cache.version;
+            sql = addComment(sql);
+            log(sql, 0, argsList);
+            long start = System.currentTimeMillis();
+            List<T> rows = jdbcTemplate.query(sql, new AnnotationSupportRowMapper<>(this, clazz, false),
+                    argsList.toArray());
+            logSlow(System.currentTimeMillis() - start, sql, 0, argsList);
+
+            if (!rows.isEmpty()) {
+                list.add(rows.get(0));
+                CachedEntity newEntity = new CachedEntity(copyColumns(clazz, rows.get(0)),
+                        System.currentTimeMillis() + table.cacheSeconds() * 1000L);
+                synchronized (cache) {
+                    if (version == cache.version) {
+                        cached = cache.entities.get(key);
+                        if (cached == null) {
+                            cached = new ConcurrentHashMap<>();
+                            cache.entities.put(key, cached);
+                        }
+                        cached.put(clazz, newEntity);
+                    }
+                }
+            }
+        }
+
+        handleRelatedColumn(list);
+        doInterceptorAfterQueryList(clazz, list, -1, sql, argsList);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**表的版本号，key是表名，表的数据每次修改时加1，查询结果缓存的版本号和它不一致时失效*/
+    private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+
+    /**查询结果缓存，key是DO类、最终的sql、参数和查询类型*/
+    private final LRUCache<List<Object>, CachedQueryResult> queryResultCache = new LRUCache<>(1024);
+
+    private static class CachedQueryResult {
+        private final List<Object> rows;
+        private final long total;
+        private final long tableVersion;
+        private final long expireTime;
+
+        private CachedQueryResult(List<Object> rows, long total, long tableVersion, long expireTime) {
+            this.rows = rows;
+            this.total = total;
+            this.tableVersion = tableVersion;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * @return 不使用查询结果缓存时返回null
+     */
+    private List<Object> getQueryResultCacheKey(Class<?> clazz, String sql, Object args, Object queryType) {
+        if (DOInfoReader.getJoinTable(clazz) != null || DOInfoReader.isVirtualTable(clazz)
+                || DOInfoReader.getTable(clazz).queryCacheSeconds() <= 0
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        return Arrays.asList(clazz, sql, NimbleOrmJSON.toJson(args), String.valueOf(queryType));
+    }
+
+    private CachedQueryResult getCachedQueryResult(Class<?> clazz, List<Object> cacheKey) {
+        CachedQueryResult cached = queryResultCache.get(cacheKey);
+        if (cached == null || cached.expireTime < System.currentTimeMillis()
+                || cached.tableVersion != getTableVersion(clazz)) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * 放入查询结果缓存，tableVersion是查询前获取的表版本号，查询期间表被修改时该缓存不会被使用
+     */
+    private void putQueryResult(Class<?> clazz, List<Object> cacheKey, List<?> rows, long total, long tableVersion) {
+        List<Object> copied = null;
+        if (rows != null) {
+            copied = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                copied.add(row == null ? null : copyColumns(clazz, row));
+            }
+        }
+        queryResultCache.put(cacheKey, new CachedQueryResult(copied, total, tableVersion,
+                System.currentTimeMillis() + DOInfoReader.getTable(clazz).queryCacheSeconds() * 1000L));
+    }
+
+    private <T> List<T> copyCachedRows(Class<T> clazz, CachedQueryResult cached) {
+        List<T> list = new ArrayList<>(cached.rows.size());
+        for (Object row : cached.rows) {
+            list.add(row == null ? null : copyColumns(clazz, row));
+        }
+        return list;
+    }
+
+    private long getTableVersion(Class<?> clazz) {
+        return tableVersions.computeIfAbsent(getCacheTableName(clazz), k -> new AtomicLong()).get();
+    }
+
+    /**
+     * 使用查询结果缓存查询总数，不使用缓存时直接查询
+     */
+    private long getCountWithQueryCache(Class<?> clazz, String sql, Object[] args, Supplier<Long> query) {
+        List<Object> cacheKey = getQueryResultCacheKey(clazz, sql, args, "count");
+        if (cacheKey == null) {
+            return query.get();
+        }
+        CachedQueryResult cached = getCachedQueryResult(clazz, cacheKey);
+        if (cached != null) {
+            return cached.total;
+        }
+        long tableVersion = getTableVersion(clazz);
+        long total = query.get();
+        putQueryResult(clazz, cacheKey, null, total, tableVersion);
+        return total;
+    }
+
+    /**
+     * 数据修改后失效实体缓存中对应主键的数据，并使该表的查询结果缓存失效；在事务中时提交后再失效一次。<br>
+     * 只处理开启了缓存的类，或者同一个表已经有缓存的其它类，其它类的修改不做任何处理
+     * @param tList 修改的对象，为null时失效整个表的实体缓存
+     */
+    protected void evictCache(Class<?> clazz, Collection<?> tList) {
+        boolean isCacheEnabled = isCacheEnabled(clazz);
+        if (!isCacheEnabled && entityCaches.isEmpty() && tableVersions.isEmpty()) {
+            return;
+        }
+        String tableName = getCacheTableName(clazz);
+        if (!isCacheEnabled && !isTableCached(tableName)) {
+            return;
+        }
+        List<String> keys = null;
+        if (tList != null) {
+            List<Field> keyColumns = DOInfoReader.getKeyColumnsNoThrowsException(clazz);
+            if (keyColumns.size() == 1) {
+                keys = new ArrayList<>();
+                for (Object t : tList) {
+                    Object keyValue = t == null ? null : DOInfoReader.getValue(keyColumns.get(0), t);
+                    if (keyValue != null) {
+                        keys.add(keyValue.toString());
+                    }
+                }
+            }
+        }
+        List<String> evictKeys = keys;
+        Runnable evict = () -> evictTableCache(tableName, evictKeys);
+        evict.run();
+        // 事务中即使现在没有缓存也要在提交后失效，因为提交前其它线程可能把旧数据放入缓存
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            executeAfterCommit(evict);
+        }
+    }
+
+    /**
+     * executeRaw修改数据后，失效sql中涉及的表的缓存；无法解析出表名时失效所有表的缓存。
+     * 还没有任何缓存时不解析sql
+     */
+    protected void evictCache(String sql) {
+        if (entityCaches.isEmpty() && tableVersions.isEmpty()) {
+            return;
+        }
+        List<String> tableNames = SQLUtils.getTableNames(sql);
+        if (tableNames != null && tableNames.stream().noneMatch(this::isTableCached)) {
+            return;
+        }
+        Runnable evict = () -> {
+            if (tableNames != null) {
+                tableNames.forEach(tableName -> evictTableCache(tableName, null));
+                return;
+            }
+            Set<String> allTableNames = new HashSet<>(tableVersions.keySet());
+            allTableNames.addAll(entityCaches.keySet());
+            allTableNames.forEach(tableName -> evictTableCache(tableName, null));
+        };
+        evict.run();
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            executeAfterCommit(evict);
+        }
+    }
+
+    private static boolean isCacheEnabled(Class<?> clazz) {
+        Table table = DOInfoReader.getTable(clazz);
+        return table.cacheSeconds() > 0 || table.queryCacheSeconds() > 0;
+    }
+
+    private boolean isTableCached(String tableName) {
+        return entityCaches.containsKey(tableName) || tableVersions.containsKey(tableName);
+    }
+
+    /**
+     * 失效表的缓存，版本号和实体缓存在执行时才获取，以便事务提交后失效事务期间新放入的缓存；
+     * 只对已经存在的版本号加1，避免没有查询缓存的表(例如分表)占用版本号
+     * @param keys 要失效的实体缓存主键，为null时失效整个表的实体缓存
+     */
+    private void evictTableCache(String tableName, List<String> keys) {
+        tableVersions.computeIfPresent(tableName, (k, version) -> {
+            version.incrementAndGet();
+            return version;
+        });
+        EntityCache cache = entityCaches.get(tableName);
+        if (cache != null) {
+            synchronized (cache) {
+                cache.version++;
+                if (keys == null) {
+                    cache.entities.clear();
+                } else {
+                    keys.forEach(cache.entities::remove);
+                }
+            }
+        }
+    }
+
+    /**
+     * 缓存使用的表名，统一为小写，以便和executeRaw中解析出来的表名对应
+     */
+    private static String getCacheTableName(Class<?> clazz) {
+        String tableName = DBHelperContext.getTableName(clazz);
+        tableName = InnerCommonUtils.isBlank(tableName) ? DOInfoReader.getTable(clazz).value() : tableName;
+        return tableName.toLowerCase();
+    }
+
+    /**
+     * 复制@Column字段到新的对象，用于缓存和返回值互不影响
+     */
+    private static <T> T copyColumns(Class<T> clazz, Object from) {
+        T t;
+        try {
+            t = clazz.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RowMapperFailException(e);
+        }
+        for (Field field : DOInfoReader.getColumns(clazz)) {
+            DOInfoReader.setValue(field, t, copyColumnValue(field, DOInfoReader.getValue(field, from)));
+        }
+        return t;
+    }
+
+    /**
+     * 复制可变的字段值：JSON字段通过序列化再解析深复制，Date和byte[]克隆，List和Map复制一份；其它类型不可变，直接使用
+     */
+    private static Object copyColumnValue(Field field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        Column column = field.getAnnotation(Column.class);
+        if (column != null && column.isJSON() && !(value instanceof String)) {
+            String json = NimbleOrmJSON.toJson(value);
+            try {
+                Type genericType = field.getGenericType();
+                return genericType instanceof Class ? NimbleOrmJSON.parse(json, field.getType())
+                        : NimbleOrmJSON.parseGeneric(json, (ParameterizedType) genericType);
+            } catch (IOException e) {
+                throw new RowMapperFailException(e);
+            }
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof List && field.getType().isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>((List<?>) value);
+        }
+        if (value instanceof Map && field.getType().isAssignableFrom(LinkedHashMap.class)) {
+            return new LinkedHashMap<>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
     @Override
     public <T> PageData<T> getPage(final Class<T> clazz, int page, int pageSize,
                                    String postSql, Object... args) {
@@ -46,7 +483,79 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         }
 
         int offset = (page - 1) * pageSize;
-        return _getPage(clazz, true,false, true, offset, pageSize, postSql, args);
+        return getPageByStrategy(clazz, PageCountModeEnum.EXACT, offset, pageSize, postSql, args);
+    }
+
+    @Override
+    public <T> PageData<T> getPage(Class<T> clazz, PageCountModeEnum countMode, int page, int pageSize,
+                                   String postSql, Object... args) {
+        assertPage(page);
+        if (maxPageSize != null && pageSize > maxPageSize) {
+            LOGGER.warn("query class:{} pageSize {} is too large, set to maxPageSize {}", clazz, pageSize, maxPageSize);
+            pageSize = maxPageSize;
+        }
+
+        int offset = (page - 1) * pageSize;
+        return getPageByStrategy(clazz, countMode == null ? PageCountModeEnum.EXACT : countMode,
+                offset, pageSize, postSql, args);
+    }
+
+    /**
+     * 分页查询，开启了DEFERRED_JOIN_FOR_PAGINATION特性且满足条件时使用延迟关联的方式查询
+     */
+    private <T> PageData<T> getPageByStrategy(Class<T> clazz, PageCountModeEnum countMode, int offset,
+                                              int pageSize, String postSql, Object... args) {
+        // 有拦截器时不使用延迟关联，保证拦截器看到的是原始的分页sql和参数
+        if (offset > 0 && getFeature(FeatureEnum.DEFERRED_JOIN_FOR_PAGINATION) && interceptors.isEmpty()
+                && !DOInfoReader.isVirtualTable(clazz) && DOInfoReader.getJoinTable(clazz) == null
+                && DOInfoReader.getKeyColumnsNoThrowsException(clazz).size() == 1
+                && SQLUtils.isWithoutGroupBy(postSql)) {
+            return getPageByDeferredJoin(clazz, countMode, offset, pageSize, postSql, args);
+        }
+        return _getPage(clazz, true, false, countMode, offset, pageSize, postSql, args);
+    }
+
+    /**
+     * 延迟关联分页：先只查询主键分页，再用主键in查询完整的数据，并按主键的顺序排序。
+     * 这样深分页时offset扫描的只是主键，不需要读取被丢弃的整行数据。
+     */
+    private <T> PageData<T> getPageByDeferredJoin(Class<T> clazz, PageCountModeEnum countMode, int offset,
+                                                  int pageSize, String postSql, Object... args) {
+        PageData<T> keyPage = _getPage(clazz, true, true, countMode, offset, pageSize, postSql, args);
+
+        Field keyField = DOInfoReader.getKeyColumns(clazz).get(0);
+        List<Object> keyValues = new ArrayList<>(keyPage.getData().size());
+        for (T t : keyPage.getData()) {
+            keyValues.add(DOInfoReader.getValue(keyField, t));
+        }
+
+        List<T> list = new ArrayList<>(keyValues.size());
+        if (!keyValues.isEmpty()) {
+            List<T> rows = _getPage(clazz, true, false, null, null, null,
+                    "WHERE " + SQLUtils.getColumnName(keyField) + " IN (?)", keyValues).getData();
+            Map<Object, T> keyToRow = new HashMap<>();
+            for (T row : rows) {
+                keyToRow.put(DOInfoReader.getValue(keyField, row), row);
+            }
+            for (Object keyValue : keyValues) {
+                T row = keyToRow.get(keyValue);
+                if (row != null) { // 两次查询之间被删除的数据不返回
+                    list.add(row);
+                }
+            }
+        }
+
+        PageData<T> pageData = new PageData<>();
+        pageData.setData(list);
+        pageData.setTotal(keyPage.getTotal());
+        pageData.setPageSize(pageSize);
+        return pageData;
+    }
+
+    @Override
+    public <T> PageData<T> getPageWithColumns(Class<T> clazz, Collection<String> fieldNames, int page, int pageSize,
+                                              String postSql, Object... args) {
+        return withSelectColumns(clazz, fieldNames, () -> getPage(clazz, page, pageSize, postSql, args));
     }
 
     @Override
@@ -60,40 +569,53 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
         String sql = SQLUtils.getSelectCountSQL(clazz) +
                 (isVirtualTable ? "" : SQLUtils.autoSetSoftDeleted("", clazz));
-        sql = addComment(sql);
+        String countSql = addComment(sql);
 
-        log(sql, 0, null);
-        long start = System.currentTimeMillis();
-        Long rows = jdbcTemplate.queryForObject(sql, Long.class);
+        return getCountWithQueryCache(clazz, countSql, null, () -> {
+            log(countSql, 0, null);
+            long start = System.currentTimeMillis();
+            Long rows = jdbcTemplate.queryForObject(countSql, Long.class);
 
-        long cost = System.currentTimeMillis() - start;
-        logSlow(cost, sql, 0, null);
-        return rows == null ? 0 : rows;
+            long cost = System.currentTimeMillis() - start;
+            logSlow(cost, countSql, 0, null);
+            return rows == null ? 0 : rows;
+        });
     }
 
     // 为了解决group by的计数问题，将计数转换成select count(*) from (子select语句) 的形式
     @Override
     public <T> long getCount(Class<T> clazz, String postSql, Object... args) {
+        String sql = getCountSQL(clazz, postSql);
+        return getCountWithQueryCache(clazz, sql, args, () -> queryCount(sql, args));
+    }
+
+    /**
+     * 生成计数的sql，这里用到了线程上下文中的自定义表名和注释，所以要在调用方线程中生成
+     */
+    private String getCountSQL(Class<?> clazz, String postSql) {
         boolean isVirtualTable = DOInfoReader.isVirtualTable(clazz);
 
         String sqlSB = "SELECT count(*) FROM ("
                 + SQLUtils.getSelectSQL(clazz, false, true, features, postSql)
                 + (isVirtualTable ? postSql : SQLUtils.autoSetSoftDeleted(postSql, clazz))
                 + ") tff305c6";
+        return addComment(sqlSB);
+    }
 
+    private long queryCount(String sql, Object... args) {
         List<Object> argsList = new ArrayList<>(); // 不要直接用Arrays.asList，它不支持clear方法
         if (args != null) {
             argsList.addAll(Arrays.asList(args));
         }
 
-        String sql = sqlSB;
-        sql = addComment(sql);
         log(sql, 0, argsList);
 
         long start = System.currentTimeMillis();
 
         Long rows;
-        if (argsList.isEmpty()) {
+        if (isUsePositionalArgs(sql, argsList)) {
+            rows = jdbcTemplate.queryForObject(sql, Long.class, argsList.toArray());
+        } else if (argsList.isEmpty()) {
             rows = namedParameterJdbcTemplate.queryForObject(sql, new HashMap<>(),
                     Long.class); // 因为有in (?)所以用namedParameterJdbcTemplate
         } else {
@@ -108,6 +630,137 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         return rows == null ? 0 : rows;
     }
 
+    /**
+     * 在pageCountExecutor中异步查询总数，只有设置了pageCountExecutor且当前线程不在事务中时才异步，
+     * 因为事务中的查询需要使用事务绑定的同一个连接。
+     * @return 不满足异步条件或提交失败时返回null，由调用方同步查询
+     */
+    private CompletableFuture<Long> submitCount(String sql, Object... args) {
+        Executor executor = pageCountExecutor;
+        if (executor == null || TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> queryCount(sql, args), executor);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("submit count query to pageCountExecutor rejected, run it in current thread, sql:{}", sql);
+            return null;
+        }
+    }
+
+    private static long getCountResult(CompletableFuture<Long> countFuture) {
+        try {
+            return countFuture.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**缓存的总数，key是计数sql和参数*/
+    private final LRUCache<String, CachedCount> pageCountCache = new LRUCache<>(1024);
+
+    private static class CachedCount {
+        private final long total;
+        private final long expireTime;
+
+        private CachedCount(long total, long expireTime) {
+            this.total = total;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private static String getCountCacheKey(String countSql, Object... args) {
+        return countSql + "\n" + NimbleOrmJSON.toJson(args);
+    }
+
+    private Long getCachedCount(String countSql, Object... args) {
+        CachedCount cachedCount = pageCountCache.get(getCountCacheKey(countSql, args));
+        if (cachedCount == null || cachedCount.expireTime < System.currentTimeMillis()) {
+            return null;
+        }
+        return cachedCount.total;
+    }
+
+    private void putCachedCount(String countSql, Object[] args, long total) {
+        pageCountCache.put(getCountCacheKey(countSql, args),
+                new CachedCount(total, System.currentTimeMillis() + pageCountCacheSeconds * 1000L));
+    }
+
+    /**
+     * 获得估算的总数，无法估算时查询准确的总数。不满一页时总数是确定的；估算值不会小于已经查到的数据个数
+     */
+    private long getEstimatedCount(Class<?> clazz, String postSql, Integer offset, Integer limit, int size,
+                                   Object... args) {
+        long atLeast = (offset == null ? 0 : offset) + size;
+        if (limit != null && size > 0 && size < limit) {
+            return atLeast;
+        }
+
+        Long estimated = null;
+        try {
+            estimated = queryEstimatedCount(clazz, postSql, args);
+        } catch (Exception e) {
+            LOGGER.warn("query estimated count fail for class:{}, postSql:{}, query exact count instead",
+                    clazz, postSql, e);
+        }
+        if (estimated == null) {
+            return getCount(clazz, postSql, args);
+        }
+        return Math.max(estimated, atLeast);
+    }
+
+    /**
+     * @return 不支持估算时返回null
+     */
+    private Long queryEstimatedCount(Class<?> clazz, String postSql, Object... args) {
+        if (DOInfoReader.isVirtualTable(clazz) || DOInfoReader.getJoinTable(clazz) != null) {
+            return null;
+        }
+        String tableName = DBHelperContext.getTableName(clazz);
+        if (InnerCommonUtils.isBlank(tableName)) {
+            tableName = DOInfoReader.getTable(clazz).value();
+        }
+        boolean isWithoutCondition = DOInfoReader.getSoftDeleteColumn(clazz) == null
+                && SQLUtils.isWithoutCondition(postSql);
+
+        DatabaseEnum databaseType = getDatabaseType();
+        if (databaseType == DatabaseEnum.MYSQL) {
+            if (isWithoutCondition) {
+                return queryEstimatedCountSql("SELECT TABLE_ROWS FROM information_schema.TABLES"
+                        + " WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=?", tableName);
+            }
+            String sql = "EXPLAIN " + SQLUtils.getSelectSQL(clazz, false, true, features, postSql)
+                    + SQLUtils.autoSetSoftDeleted(postSql, clazz);
+            List<Object> argsList = args == null ? new ArrayList<>() : Arrays.asList(args);
+            List<Map<String, Object>> explain = namedParameterJdbcTemplate.queryForList(
+                    NamedParameterUtils.trans(sql, argsList), NamedParameterUtils.transParam(argsList));
+            if (explain.size() != 1) {
+                return null; // 多表的执行计划无法简单估算
+            }
+            Object rows = explain.get(0).get("rows");
+            Object filtered = explain.get(0).get("filtered");
+            if (!(rows instanceof Number)) {
+                return null;
+            }
+            double ratio = filtered instanceof Number ? ((Number) filtered).doubleValue() / 100 : 1;
+            return (long) (((Number) rows).longValue() * ratio);
+        } else if (databaseType == DatabaseEnum.CLICKHOUSE && isWithoutCondition) {
+            return queryEstimatedCountSql("SELECT sum(rows) FROM system.parts"
+                    + " WHERE active AND database=currentDatabase() AND table=?", tableName);
+        }
+        return null;
+    }
+
+    private Long queryEstimatedCountSql(String sql, String tableName) {
+        log(sql, 0, Collections.singletonList(tableName));
+        Number rows = jdbcTemplate.queryForObject(sql, Number.class, tableName);
+        return rows == null ? null : rows.longValue();
+    }
+
     @Override
     public <T> PageData<T> getPageWithoutCount(Class<T> clazz, int page, int pageSize,
                                                String postSql, Object... args) {
@@ -118,7 +771,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         }
 
         int offset = (page - 1) * pageSize;
-        return _getPage(clazz, true, false, false, offset, pageSize, postSql, args);
+        return getPageByStrategy(clazz, null, offset, pageSize, postSql, args);
     }
 
     @Override
@@ -126,9 +779,124 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         return getPageWithoutCount(clazz, page, pageSize, null);
     }
 
+    @Override
+    public <T> CursorPageData<T> getPageByCursor(Class<T> clazz, String cursor, int pageSize,
+                                                 String postSql, Object... args) {
+        return getPageByCursor(clazz, null, cursor, pageSize, postSql, args);
+    }
+
+    @Override
+    public <T> CursorPageData<T> getPageByCursor(Class<T> clazz, String cursor, int pageSize) {
+        return getPageByCursor(clazz, null, cursor, pageSize, null);
+    }
+
+    @Override
+    public <T> CursorPageData<T> getPageByCursor(Class<T> clazz, List<String> cursorColumns, String cursor,
+                                                 int pageSize, String postSql, Object... args) {
+        assertNotVirtualTable(clazz);
+        if (DOInfoReader.getJoinTable(clazz) != null) {
+            throw new InvalidParameterException("getPageByCursor not support @JoinTable class:" + clazz);
+        }
+        if (pageSize < 1) {
+            throw new InvalidParameterException("pageSize must be greater than 0");
+        }
+        if (maxPageSize != null && pageSize > maxPageSize) {
+            LOGGER.warn("query class:{} pageSize {} is too large, set to maxPageSize {}", clazz, pageSize, maxPageSize);
+            pageSize = maxPageSize;
+        }
+
+        List<Field> cursorFields = getCursorFields(clazz, cursorColumns);
+        List<Object> cursorValues = InnerCommonUtils.isBlank(cursor) ? null : decodeCursor(cursor, cursorFields);
+
+        List<Object> argsList = new ArrayList<>();
+        if (args != null) {
+            argsList.addAll(Arrays.asList(args));
+        }
+        String cursorPostSql;
+        try {
+            cursorPostSql = SQLUtils.getCursorPostSql(cursorFields, cursorValues, postSql, argsList);
+        } catch (JSQLParserException e) {
+            throw new BadSQLSyntaxException(e);
+        }
+
+        List<T> list = _getPage(clazz, true, false, null, null, pageSize,
+                cursorPostSql, argsList.toArray()).getData();
+
+        // 满一页时才可能有下一页，此时用最后一条记录生成下一页的游标
+        String nextCursor = null;
+        if (list.size() >= pageSize) {
+            nextCursor = encodeCursor(list.get(list.size() - 1), cursorFields);
+        }
+        return new CursorPageData<>(list, pageSize, nextCursor);
+    }
+
+    /**
+     * 获得游标列，cursorColumns为空时使用主键列
+     */
+    private List<Field> getCursorFields(Class<?> clazz, List<String> cursorColumns) {
+        if (cursorColumns == null || cursorColumns.isEmpty()) {
+            return DOInfoReader.getKeyColumns(clazz);
+        }
+        List<Field> columns = DOInfoReader.getColumns(clazz);
+        List<Field> cursorFields = new ArrayList<>();
+        for (String cursorColumn : cursorColumns) {
+            Field found = null;
+            for (Field field : columns) {
+                if (field.getAnnotation(Column.class).value().equalsIgnoreCase(cursorColumn)) {
+                    found = field;
+                    break;
+                }
+            }
+            if (found == null) {
+                throw new InvalidParameterException("cursor column:" + cursorColumn + " not found in class:" + clazz);
+            }
+            if (InnerCommonUtils.isNotBlank(found.getAnnotation(Column.class).computed())) {
+                throw new InvalidParameterException("cursor column:" + cursorColumn + " can not be computed column");
+            }
+            cursorFields.add(found);
+        }
+        return cursorFields;
+    }
+
+    /**
+     * 游标是各游标列值的json，再进行base64编码，对调用方来说是不透明的
+     */
+    private static String encodeCursor(Object lastRow, List<Field> cursorFields) {
+        List<String> values = new ArrayList<>(cursorFields.size());
+        for (Field field : cursorFields) {
+            Object value = DOInfoReader.getValue(field, lastRow);
+            if (value == null) {
+                throw new InvalidParameterException("cursor column:" + field.getName()
+                        + " value is null, can not generate next cursor, class:" + lastRow.getClass().getName());
+            }
+            values.add(NimbleOrmJSON.toJson(value));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                NimbleOrmJSON.toJson(values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Object> decodeCursor(String cursor, List<Field> cursorFields) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] values = NimbleOrmJSON.parse(json, String[].class);
+            if (values == null || values.length != cursorFields.size()) {
+                throw new InvalidParameterException("cursor not match cursor columns, cursor:" + cursor);
+            }
+            List<Object> result = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                result.add(NimbleOrmJSON.parse(values[i], cursorFields.get(i).getType()));
+            }
+            return result;
+        } catch (InvalidParameterException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InvalidParameterException("invalid cursor:" + cursor);
+        }
+    }
+
     @Override
     public <T> List<T> getAll(final Class<T> clazz) {
-        return _getPage(clazz, true, false, false, null, null, null).getData();
+        return _getPage(clazz, true, false, null, null, null, null).getData();
     }
 
     @Override
@@ -138,8 +906,6 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
     @Override
     public <T> Stream<T> getAllForStream(Class<T> clazz, String postSql, Object... args) {
-        jdbcTemplate.setFetchSize(fetchSize);
-
         StringBuilder sqlSB = new StringBuilder();
         sqlSB.append(SQLUtils.getSelectSQL(clazz, false, false, features, postSql));
         sqlSB.append(SQLUtils.autoSetSoftDeleted(postSql, clazz));
@@ -161,19 +927,16 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
         AnnotationSupportRowMapper<T> mapper = new AnnotationSupportRowMapper<>(this, clazz);
         if (argsList.isEmpty()) {
-            list = jdbcTemplate.queryForStream(sql, mapper);
+            list = queryForStream(clazz, sql, new HashMap<>(), mapper);
         } else {
-            // 因为有in (?)所以用namedParameterJdbcTemplate
-            list = namedParameterJdbcTemplate.queryForStream(
-                    NamedParameterUtils.trans(sql, argsList),
-                    NamedParameterUtils.transParam(argsList),
-                    mapper);
+            list = queryForStream(clazz, NamedParameterUtils.trans(sql, argsList),
+                    NamedParameterUtils.transParam(argsList), mapper);
         }
 
         Stream<T> result;
         List<Field> relatedColumns = DOInfoReader.getRelatedColumns(clazz);
         if (!relatedColumns.isEmpty()) {
-            result = InnerCommonUtils.partition(list, fetchSize)
+            result = InnerCommonUtils.partition(list, getStreamFetchSize(clazz))
                     .peek(this::handleRelatedColumn)
                     .flatMap(Collection::stream);
         } else {
@@ -189,25 +952,43 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
     @Override
     public <T> List<T> getAll(final Class<T> clazz, String postSql, Object... args) {
-        return _getPage(clazz, true,false, false, null, null, postSql, args).getData();
+        return _getPage(clazz, true, false, null, null, null, postSql, args).getData();
+    }
+
+    @Override
+    public <T> List<T> getAllWithColumns(Class<T> clazz, Collection<String> fieldNames, String postSql, Object... args) {
+        return withSelectColumns(clazz, fieldNames, () -> getAll(clazz, postSql, args));
+    }
+
+    /**
+     * 在当前线程指定clazz只查询fieldNames字段后执行查询，执行完还原
+     */
+    private <R> R withSelectColumns(Class<?> clazz, Collection<String> fieldNames, Supplier<R> query) {
+        Set<String> oldSelectColumns = DBHelperContext.getSelectColumns(clazz);
+        DBHelperContext.setSelectColumns(clazz, fieldNames);
+        try {
+            return query.get();
+        } finally {
+            DBHelperContext.setSelectColumns(clazz, oldSelectColumns);
+        }
     }
 
     @Override
     public <T> List<T> getAllKey(Class<T> clazz, String postSql, Object... args) {
         assertNotVirtualTable(clazz);
 
-        return _getPage(clazz, true, true, false, null, null, postSql, args).getData();
+        return _getPage(clazz, true, true, null, null, null, postSql, args).getData();
     }
 
     @Override
     public <T> T getOne(Class<T> clazz) {
-        List<T> list = _getPage(clazz, true, false, false, 0, 1, null).getData();
+        List<T> list = _getPage(clazz, true, false, null, 0, 1, null).getData();
         return list == null || list.isEmpty() ? null : list.get(0);
     }
 
     @Override
     public <T> T getOne(Class<T> clazz, String postSql, Object... args) {
-        List<T> list = _getPage(clazz, true, false, false,
+        List<T> list = _getPage(clazz, true, false, null,
                 0, 1, postSql, args).getData();
         return list == null || list.isEmpty() ? null : list.get(0);
     }
@@ -223,8 +1004,6 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
     }
 
     private <T> Stream<T> getRawByNamedParamForStream(Class<T> clazz, String sql, Map<String, ?> args) {
-        jdbcTemplate.setFetchSize(fetchSize);
-
         List<Object> forIntercept = new ArrayList<>();
         if (args != null) {
             forIntercept.add(args);
@@ -236,30 +1015,90 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         long start = System.currentTimeMillis();
 
 
-        Stream<T> stream;
-        if (args == null || args.isEmpty()) {
-            stream = namedParameterJdbcTemplate.queryForStream(sql, new HashMap<>(),
-                    new AnnotationSupportRowMapper<>(this, clazz, false));
-        } else {
-            stream = namedParameterJdbcTemplate.queryForStream(sql, args,
-                    new AnnotationSupportRowMapper<>(this, clazz, false));
+        Stream<T> stream = queryForStream(clazz, sql, args == null ? new HashMap<>() : args,
+                new AnnotationSupportRowMapper<>(this, clazz, false));
+
+        Stream<T> result;
+        List<Field> relatedColumns = DOInfoReader.getRelatedColumns(clazz);
+        if (!relatedColumns.isEmpty()) {
+            result = InnerCommonUtils.partition(stream, getStreamFetchSize(clazz))
+                    .peek(this::handleRelatedColumn)
+                    .flatMap(Collection::stream);
+        } else {
+            result = stream;
+        }
+
+        long cost = System.currentTimeMillis() - start;
+        logSlow(cost, sql, 0, forIntercept);
+
+        // stream方式不支持doInterceptorAfterQueryList
+        return result;
+    }
+
+    /**
+     * 流式查询，每个查询使用自己的PreparedStatement设置fetchSize，不修改共享的jdbcTemplate。<br>
+     * MySQL驱动默认会把结果全部读到内存，开启MYSQL_STREAM_RESULT_SET时，非事务中使用Integer.MIN_VALUE逐行读取；
+     * 事务中由于关联查询等需要复用同一个连接，仍使用fetchSize，此时需要jdbc url带上useCursorFetch=true才是流式的。
+     */
+    private <T> Stream<T> queryForStream(Class<?> clazz, String namedSql, Map<String, ?> paramMap,
+                                         RowMapper<T> mapper) {
+        int streamFetchSize = getStreamFetchSize(clazz);
+        if (getDatabaseType() == DatabaseEnum.MYSQL && getFeature(FeatureEnum.MYSQL_STREAM_RESULT_SET)
+                && !TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isSynchronizationActive()) {
+            streamFetchSize = Integer.MIN_VALUE;
+        }
+
+        MapSqlParameterSource paramSource = new MapSqlParameterSource(paramMap);
+        ParsedSql parsedSql = org.springframework.jdbc.core.namedparam.NamedParameterUtils.parseSqlStatement(namedSql);
+        String sql = org.springframework.jdbc.core.namedparam.NamedParameterUtils
+                .substituteNamedParameters(parsedSql, paramSource);
+        Object[] params = org.springframework.jdbc.core.namedparam.NamedParameterUtils
+                .buildValueArray(parsedSql, paramSource, null);
+        List<SqlParameter> declaredParams = org.springframework.jdbc.core.namedparam.NamedParameterUtils
+                .buildSqlParameterList(parsedSql, paramSource);
+
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(sql, declaredParams);
+        factory.setResultSetType(ResultSet.TYPE_FORWARD_ONLY);
+        factory.setUpdatableResults(false);
+        return jdbcTemplate.queryForStream(
+                new StreamPreparedStatementCreator(factory.newPreparedStatementCreator(params), sql, streamFetchSize),
+                mapper);
+    }
+
+    /**
+     * 流式查询每次获取的数据条数，@Table注解的streamFetchSize优先，否则使用setFetchSize设置的值
+     */
+    private int getStreamFetchSize(Class<?> clazz) {
+        Table table = ClassInfoCache.getTable(clazz);
+        if (table != null && table.streamFetchSize() > 0) {
+            return table.streamFetchSize();
+        }
+        return fetchSize;
+    }
+
+    private static class StreamPreparedStatementCreator implements PreparedStatementCreator, SqlProvider {
+        private final PreparedStatementCreator delegate;
+        private final String sql;
+        private final int fetchSize;
+
+        private StreamPreparedStatementCreator(PreparedStatementCreator delegate, String sql, int fetchSize) {
+            this.delegate = delegate;
+            this.sql = sql;
+            this.fetchSize = fetchSize;
         }
 
-        Stream<T> result;
-        List<Field> relatedColumns = DOInfoReader.getRelatedColumns(clazz);
-        if (!relatedColumns.isEmpty()) {
-            result = InnerCommonUtils.partition(stream, fetchSize)
-                    .peek(this::handleRelatedColumn)
-                    .flatMap(Collection::stream);
-        } else {
-            result = stream;
+        @Override
+        public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+            PreparedStatement ps = delegate.createPreparedStatement(con);
+            ps.setFetchSize(fetchSize);
+            return ps;
         }
 
-        long cost = System.currentTimeMillis() - start;
-        logSlow(cost, sql, 0, forIntercept);
-
-        // stream方式不支持doInterceptorAfterQueryList
-        return result;
+        @Override
+        public String getSql() {
+            return sql;
+        }
     }
 
     private <T> List<T> getRawByNamedParam(Class<T> clazz, String sql, Map<String, ?> args) {
@@ -294,8 +1133,6 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
     @Override
     public <T> Stream<T> getRawForStream(Class<T> clazz, String sql, Object... args) {
-        jdbcTemplate.setFetchSize(fetchSize);
-
         List<Object> argsList = new ArrayList<>(); // 不要直接用Arrays.asList，它不支持clear方法
         if (args != null) {
             argsList.addAll(Arrays.asList(args));
@@ -308,19 +1145,16 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         long start = System.currentTimeMillis();
         Stream<T> stream;
         if (argsList.isEmpty()) {
-            stream = namedParameterJdbcTemplate.queryForStream(sql, new HashMap<>(),
-                    new AnnotationSupportRowMapper<>(this, clazz, false));
+            stream = queryForStream(clazz, sql, new HashMap<>(), new AnnotationSupportRowMapper<>(this, clazz, false));
         } else {
-            stream = namedParameterJdbcTemplate.queryForStream(
-                    NamedParameterUtils.trans(sql, argsList),
-                    NamedParameterUtils.transParam(argsList),
-                    new AnnotationSupportRowMapper<>(this, clazz, false));
+            stream = queryForStream(clazz, NamedParameterUtils.trans(sql, argsList),
+                    NamedParameterUtils.transParam(argsList), new AnnotationSupportRowMapper<>(this, clazz, false));
         }
 
         Stream<T> result;
         List<Field> relatedColumns = DOInfoReader.getRelatedColumns(clazz);
         if (!relatedColumns.isEmpty()) {
-            result = InnerCommonUtils.partition(stream, fetchSize)
+            result = InnerCommonUtils.partition(stream, getStreamFetchSize(clazz))
                     .peek(this::handleRelatedColumn)
                     .flatMap(Collection::stream);
         } else {
@@ -347,7 +1181,9 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
         long start = System.currentTimeMillis();
         List<T> list;
-        if (argsList.isEmpty()) {
+        if (isUsePositionalArgs(sql, argsList)) {
+            list = jdbcTemplate.query(sql, new AnnotationSupportRowMapper<>(this, clazz, false), argsList.toArray());
+        } else if (argsList.isEmpty()) {
             list = namedParameterJdbcTemplate.query(sql,
                     new AnnotationSupportRowMapper<>(this, clazz, false));
         } else {
@@ -425,7 +1261,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         }
 
         return (List<T>) _getPage(t.getClass(), true, false,
-                false, null, limit, sql.toString(), args.toArray()).getData();
+                null, null, limit, sql.toString(), args.toArray()).getData();
     }
 
     /**
@@ -433,16 +1269,26 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
      *
      * @param clazz 注解了@Table的类
      * @param selectOnlyKey 是否只查询主键，只查询主键时，拦截器不进行拦截，RelatedColumn也不处理
-     * @param withCount 是否计算总数
+     * @param countMode 总数的计算方式，为null时不计算总数
      * @param offset 从0开始，null时不生效；当offset不为null时，要求limit存在
      * @param limit null时不生效
      * @param postSql sql的where/group/order等sql语句
      * @param args 参数
      */
     private <T> PageData<T> _getPage(Class<T> clazz, boolean isUseNamedTemplate,
-                                     boolean selectOnlyKey, boolean withCount,
+                                     boolean selectOnlyKey, PageCountModeEnum countMode,
                                      Integer offset, Integer limit,
                                      String postSql, Object... args) {
+        return _getPage(clazz, isUseNamedTemplate, selectOnlyKey, true, countMode, offset, limit, postSql, args);
+    }
+
+    /**
+     * @param isHandleRelatedColumn 是否处理RelatedColumn，为false时由调用方自行处理
+     */
+    private <T> PageData<T> _getPage(Class<T> clazz, boolean isUseNamedTemplate,
+                                     boolean selectOnlyKey, boolean isHandleRelatedColumn,
+                                     PageCountModeEnum countMode, Integer offset, Integer limit,
+                                     String postSql, Object... args) {
 
         boolean isVirtualTable = DOInfoReader.isVirtualTable(clazz);
 
@@ -472,15 +1318,53 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
         String sql = sqlSB.toString();
         sql = addComment(sql);
+
+        List<Object> resultCacheKey = selectOnlyKey ? null
+                : getQueryResultCacheKey(clazz, sql, argsList, countMode);
+        long tableVersion = 0;
+        if (resultCacheKey != null) {
+            CachedQueryResult cached = getCachedQueryResult(clazz, resultCacheKey);
+            if (cached != null) {
+                List<T> list = copyCachedRows(clazz, cached);
+                if (isHandleRelatedColumn) {
+                    handleRelatedColumn(list);
+                }
+                doInterceptorAfterQueryList(clazz, list, cached.total, sql, argsList);
+
+                PageData<T> pageData = new PageData<>();
+                pageData.setData(list);
+                pageData.setTotal(cached.total);
+                if (limit != null) {
+                    pageData.setPageSize(limit);
+                }
+                return pageData;
+            }
+            tableVersion = getTableVersion(clazz);
+        }
+
         log(sql, 0, argsList);
 
+        // 总数查询和数据查询并行执行，args是用户的原始参数，不包含拦截器的修改，和同步查询总数时一致
+        String countSql = null;
+        Long cachedTotal = null;
+        CompletableFuture<Long> countFuture = null;
+        if (countMode == PageCountModeEnum.EXACT || countMode == PageCountModeEnum.CACHED) {
+            countSql = getCountSQL(clazz, postSql);
+            if (countMode == PageCountModeEnum.CACHED) {
+                cachedTotal = getCachedCount(countSql, args);
+            }
+            if (cachedTotal == null) {
+                countFuture = submitCount(countSql, args);
+            }
+        }
+
         long start = System.currentTimeMillis();
         List<T> list;
         if (argsList.isEmpty()) {
             list = jdbcTemplate.query(sql,
                     new AnnotationSupportRowMapper<>(this, clazz, selectOnlyKey));
         } else {
-            if (isUseNamedTemplate) {
+            if (isUseNamedTemplate && !isUsePositionalArgs(sql, argsList)) {
                 // 因为有in (?)所以用namedParameterJdbcTemplate
                 list = namedParameterJdbcTemplate.query(
                         NamedParameterUtils.trans(sql, argsList),
@@ -493,16 +1377,30 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         }
 
         long total = -1; // -1 表示没有查询总数，未知
-        if (withCount) {
+        if (countMode != null) {
             // 如果offset为0且查询的list小于limit数量，说明总数就这么多了，不需要再查总数了
             if(offset != null && offset == 0 && limit != null && list.size() < limit) {
                 total = list.size();
+                if (countFuture != null) {
+                    countFuture.cancel(false);
+                }
+            } else if (cachedTotal != null) {
+                total = cachedTotal;
+            } else if (countMode == PageCountModeEnum.ESTIMATED) {
+                total = getEstimatedCount(clazz, postSql, offset, limit, list.size(), args);
             } else {
-                total = getCount(clazz, postSql, args);
+                total = countFuture != null ? getCountResult(countFuture) : queryCount(countSql, args);
+                if (countMode == PageCountModeEnum.CACHED) {
+                    putCachedCount(countSql, args, total);
+                }
             }
         }
 
-        if (!selectOnlyKey) {
+        if (resultCacheKey != null) {
+            putQueryResult(clazz, resultCacheKey, list, total, tableVersion);
+        }
+
+        if (!selectOnlyKey && isHandleRelatedColumn) {
             handleRelatedColumn(list);
         }
 
@@ -560,6 +1458,69 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         return list;
     }
 
+    // ======================= 处理延迟加载的字段 ========================
+
+    @Override
+    public <T> void handleLazyColumns(T t, String... lazyColumnProperties) {
+        if (t == null) {
+            return;
+        }
+        List<T> list = new ArrayList<>();
+        list.add(t);
+        handleLazyColumns(list, lazyColumnProperties);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void handleLazyColumns(List<T> list, String... lazyColumnProperties) {
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        List<T> tList = InnerCommonUtils.filter(list, Objects::nonNull);
+        if (tList.isEmpty()) {
+            return;
+        }
+        Class<Object> clazz = (Class<Object>) tList.get(0).getClass();
+        List<Field> lazyColumns = DOInfoReader.getLazyColumns(clazz, lazyColumnProperties);
+        if (lazyColumns.isEmpty()) {
+            return;
+        }
+
+        // 主键值相同的对象一起加载，主键有null值的对象无法加载
+        List<Field> keyColumns = DOInfoReader.getKeyColumns(clazz);
+        Map<Object, List<T>> keyToObjects = new LinkedHashMap<>();
+        for (T t : tList) {
+            Object keyValue = getKeyValueForKeys(keyColumns, t);
+            if (keyValue == null || keyValue instanceof List && ((List<?>) keyValue).contains(null)) {
+                continue;
+            }
+            keyToObjects.computeIfAbsent(keyValue, k -> new ArrayList<>()).add(t);
+        }
+        if (keyToObjects.isEmpty()) {
+            return;
+        }
+
+        List<String> fieldNames = new ArrayList<>();
+        for (Field field : lazyColumns) {
+            fieldNames.add(field.getName());
+        }
+        Map<Object, Object> rows = withSelectColumns(clazz, fieldNames,
+                () -> getByKeys(clazz, keyToObjects.keySet(), false));
+
+        keyToObjects.forEach((keyValue, objects) -> {
+            Object row = rows.get(keyValue);
+            if (row == null) {
+                return;
+            }
+            for (Field field : lazyColumns) {
+                Object value = DOInfoReader.getValue(field, row);
+                for (T t : objects) {
+                    DOInfoReader.setValue(field, t, value);
+                }
+            }
+        });
+    }
+
     // ======================= 处理 RelatedColumn数据 ========================
 
     @Override
@@ -600,10 +1561,8 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
         List<T> result = new ArrayList<>();
         for (T t : tList) {
-            Map<String, Object> vars = new HashMap<>();
-            vars.put("t", t);
             try {
-                Object value = MVEL.eval(conditional, vars);
+                Object value = ScriptUtils.executeScript(t, conditional);
                 if (value == null) {
                     LOGGER.error("execute conditional return null, script:{}, t:{}",
                             conditional, NimbleOrmJSON.toJson(t));
@@ -629,11 +1588,31 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         return result;
     }
 
+    /**
+     * 一次顶层关联处理中已经查询过的关联数据，嵌套的RelatedColumn和多个字段查询相同的数据时直接从这里取。
+     * key是[DBHelper, remoteClass, remoteColumn, extraWhere, 自定义表名, 只查询的字段]，value是 关联值 -&gt; 关联到的数据
+     */
+    private static final ThreadLocal<Map<List<Object>, Map<Object, List<Object>>>> RELATED_COLUMN_FETCH_CONTEXT
+            = new ThreadLocal<>();
+
     /**批量关联，要求批量操作的都是相同的类*/
     private <T> void postHandleRelatedColumn(List<T> tList, boolean isFromJoin, String... relatedColumnProperties) {
         if (tList == null || tList.isEmpty()) {
             return;
         }
+        if (RELATED_COLUMN_FETCH_CONTEXT.get() != null) {
+            doPostHandleRelatedColumn(tList, isFromJoin, relatedColumnProperties);
+            return;
+        }
+        RELATED_COLUMN_FETCH_CONTEXT.set(new ConcurrentHashMap<>());
+        try {
+            doPostHandleRelatedColumn(tList, isFromJoin, relatedColumnProperties);
+        } finally {
+            RELATED_COLUMN_FETCH_CONTEXT.remove();
+        }
+    }
+
+    private <T> void doPostHandleRelatedColumn(List<T> tList, boolean isFromJoin, String... relatedColumnProperties) {
         Class<?> clazz = getElementClass(tList);
         if (clazz == null) {
             return;
@@ -672,6 +1651,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
             return; // 不需要处理了
         }
 
+        List<RelatedColumnTask<T>> tasks = new ArrayList<>();
         for (Field field : relatedColumns) {
 
             // 只处理指定的field
@@ -695,7 +1675,6 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 
             List<DOInfoReader.RelatedField> localField = DOInfoReader.getFieldByDBField(clazz, column.localColumn(), field);
 
-            // 批量查询数据库，提高效率的关键
             Class<?> remoteDOClass;
             if (field.getType() == List.class) {
                 remoteDOClass = DOInfoReader.getGenericFieldType(field);
@@ -723,49 +1702,20 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
                 continue;
             }
 
-            List<?> relateValues;
-            if (column.dataService() != void.class &&
-                    IDBHelperDataService.class.isAssignableFrom(column.dataService())) {
-                IDBHelperDataService dataService = (IDBHelperDataService)
-                        applicationContext.getBean(column.dataService());
-                List<Object> valuesList = new ArrayList<>(values);
-                relateValues = dataService.get(valuesList, column, clazz, remoteDOClass);
-            } else {
-                String whereColumn = getWhereColumnForRelated(remoteField);
-                // 这里不能用DBHelper是因为拦截器会被重复触发；其次也必要，另外的DBHelper的实现也重新实现这个逻辑
-                P1_QueryOp _dbHelper = this;
-                if (InnerCommonUtils.isNotBlank(column.dbHelperBean())) {
-                    String beanName = column.dbHelperBean().trim();
-                    Object bean = applicationContext.getBean(beanName);
-                    if (!(bean instanceof P1_QueryOp)) {
-                        throw new SpringBeanNotMatchException("cannot find DBHelper bean: " + beanName
-                                 + " or it is not type of SpringJdbcDBHelper");
-                    } else {
-                        _dbHelper = (P1_QueryOp) bean;
-                    }
-                }
+            tasks.add(new RelatedColumnTask<>(field, column, tListFiltered, localField, remoteField,
+                    remoteDOClass, values));
+        }
 
-                if (InnerCommonUtils.isBlank(column.extraWhere())) {
-                    String inExpr = whereColumn + " in " + buildQuestionMark(values);
-                    relateValues = _dbHelper.getAllForRelatedColumn(remoteDOClass, "where " + inExpr, values);
-                } else {
-                    // 如果extraWhere包含limit子句，那么只能降级为逐个处理，否则可以用批量处理的方式提高性能
-                    try {
-                        if (SQLUtils.isContainsLimit(column.extraWhere())) {
-                            String eqExpr = whereColumn + "=?";
-                            String where = SQLUtils.insertWhereAndExpression(column.extraWhere(), eqExpr);
-                            relateValues = _dbHelper.getAllForRelatedColumnBySingleValue(remoteDOClass, where, values);
-                        } else {
-                            String inExpr = whereColumn + " in " + buildQuestionMark(values);
-                            String where = SQLUtils.insertWhereAndExpression(column.extraWhere(), inExpr);
-                            relateValues = _dbHelper.getAllForRelatedColumn(remoteDOClass, where, values);
-                        }
-                    } catch (JSQLParserException e) {
-                        LOGGER.error("wrong RelatedColumn extraWhere:{}, ignore extraWhere", column.extraWhere());
-                        throw new BadSQLSyntaxException(e);
-                    }
-                }
-            }
+        // 批量查询数据库，多个RelatedColumn之间互不依赖，可以并行查询
+        List<List<?>> relateValuesList = queryRelatedValues(clazz, tasks);
+
+        for (int i = 0; i < tasks.size(); i++) {
+            RelatedColumnTask<T> task = tasks.get(i);
+            Field field = task.field;
+            List<T> tListFiltered = task.tListFiltered;
+            List<DOInfoReader.RelatedField> localField = task.localField;
+            List<DOInfoReader.RelatedField> remoteField = task.remoteField;
+            List<?> relateValues = relateValuesList.get(i);
             if (relateValues == null) {
                 relateValues = new ArrayList<>();
             }
@@ -839,6 +1789,447 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         }
     }
 
+    /**
+     * 查询各个RelatedColumn关联的数据，返回值和tasks一一对应
+     */
+    private <T> List<List<?>> queryRelatedValues(Class<?> clazz, List<RelatedColumnTask<T>> tasks) {
+        List<Supplier<List<?>>> queries = new ArrayList<>(tasks.size());
+        for (RelatedColumnTask<T> task : tasks) {
+            queries.add(buildRelatedQuery(clazz, task));
+        }
+        return runRelatedQueries(queries);
+    }
+
+    /**
+     * 执行关联查询，返回值和queries一一对应。<br>
+     * 设置了relatedColumnExecutor、有多个查询且当前线程不在事务中时并行查询，其中第一个在当前线程查询；
+     * 并行查询的线程中再嵌套的RelatedColumn不再并行，避免线程池互相等待。
+     */
+    private List<List<?>> runRelatedQueries(List<Supplier<List<?>>> queries) {
+        List<List<?>> result = new ArrayList<>(queries.size());
+        Executor executor = relatedColumnExecutor;
+        if (executor == null || queries.size() < 2 || IS_IN_RELATED_COLUMN_WORKER.get() != null
+                || TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isSynchronizationActive()) {
+            for (Supplier<List<?>> query : queries) {
+                result.add(query.get());
+            }
+            return result;
+        }
+
+        // 自定义表名、只查询的字段和注释是线程上下文的，需要带到并行查询的线程中
+        RelatedWorkerContext workerContext = new RelatedWorkerContext(true);
+
+        List<CompletableFuture<List<?>>> futures = new ArrayList<>();
+        for (int i = 1; i < queries.size(); i++) {
+            Supplier<List<?>> query = queries.get(i);
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    // 线程池可能在调用线程中执行任务(例如CallerRunsPolicy)，执行完后恢复该线程原来的上下文，而不是清空
+                    RelatedWorkerContext oldContext = new RelatedWorkerContext(IS_IN_RELATED_COLUMN_WORKER.get());
+                    workerContext.apply();
+                    try {
+                        return query.get();
+                    } finally {
+                        oldContext.apply();
+                    }
+                }, executor));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("submit related column query to relatedColumnExecutor rejected, run it in current thread");
+                futures.add(CompletableFuture.completedFuture(query.get()));
+            }
+        }
+
+        result.add(queries.get(0).get());
+        for (CompletableFuture<List<?>> future : futures) {
+            try {
+                result.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 生成一个RelatedColumn的查询。<br>
+     * in查询时，本次关联处理中已经查询过的值直接使用查询过的数据；
+     * 其余的值超过maxRelatedColumnInSize时拆分成多个查询，再合并结果。
+     */
+    private <T> Supplier<List<?>> buildRelatedQuery(Class<?> clazz, RelatedColumnTask<T> task) {
+        RelatedColumn column = task.column;
+        Class<?> remoteDOClass = task.remoteDOClass;
+        List<DOInfoReader.RelatedField> remoteField = task.remoteField;
+        Set<Object> values = task.values;
+
+        if (column.dataService() != void.class &&
+                IDBHelperDataService.class.isAssignableFrom(column.dataService())) {
+            IDBHelperDataService dataService = (IDBHelperDataService)
+                    applicationContext.getBean(column.dataService());
+            return () -> getFromDataService(dataService, column, clazz, remoteDOClass, remoteField, values);
+        }
+
+        Map<Class<?>, Set<String>> relatedSelectColumns = getRelatedSelectColumns(remoteDOClass, remoteField);
+        String whereColumn = getWhereColumnForRelated(remoteField);
+        // 这里不能用DBHelper是因为拦截器会被重复触发；其次也必要，另外的DBHelper的实现也重新实现这个逻辑
+        P1_QueryOp _dbHelper = this;
+        if (InnerCommonUtils.isNotBlank(column.dbHelperBean())) {
+            String beanName = column.dbHelperBean().trim();
+            Object bean = applicationContext.getBean(beanName);
+            if (!(bean instanceof P1_QueryOp)) {
+                throw new SpringBeanNotMatchException("cannot find DBHelper bean: " + beanName
+                         + " or it is not type of SpringJdbcDBHelper");
+            } else {
+                _dbHelper = (P1_QueryOp) bean;
+            }
+        }
+        P1_QueryOp dbHelper = _dbHelper;
+
+        // 如果extraWhere包含limit子句，数据库支持时用一个查询取出每个值的前N条，否则只能降级为逐个处理
+        boolean isTopN = false;
+        try {
+            if (InnerCommonUtils.isNotBlank(column.extraWhere()) && SQLUtils.isContainsLimit(column.extraWhere())) {
+                if (dbHelper.getRelatedTopNSQL(remoteDOClass, column, remoteField, whereColumn + " in (?)") != null) {
+                    isTopN = true;
+                } else {
+                    String eqExpr = whereColumn + "=?";
+                    String where = SQLUtils.insertWhereAndExpression(column.extraWhere(), eqExpr);
+                    return () -> dbHelper.getAllForRelatedColumnBySingleValue(remoteDOClass, where, values);
+                }
+            }
+        } catch (JSQLParserException e) {
+            LOGGER.error("wrong RelatedColumn extraWhere:{}, ignore extraWhere", column.extraWhere());
+            throw new BadSQLSyntaxException(e);
+        }
+        boolean _isTopN = isTopN;
+
+        Supplier<List<?>> query = () -> {
+            // 已经查询过的值要在执行时才判断，因为前面的查询可能已经查询过了
+            Map<Object, List<Object>> loaded = getRelatedColumnLoaded(dbHelper, remoteDOClass, column);
+            Set<Object> toFetch = values;
+            List<Object> result = new ArrayList<>();
+            if (loaded != null && !loaded.isEmpty()) {
+                toFetch = new LinkedHashSet<>();
+                for (Object value : values) {
+                    List<Object> rows = loaded.get(value);
+                    if (rows == null) {
+                        toFetch.add(value);
+                    } else {
+                        result.addAll(rows);
+                    }
+                }
+            }
+            if (toFetch.isEmpty()) {
+                return result;
+            }
+
+            List<Supplier<List<?>>> chunkQueries = new ArrayList<>();
+            for (Set<Object> chunk : splitRelatedValues(toFetch)) {
+                String inExpr = whereColumn + " in " + buildQuestionMark(chunk);
+                String sql;
+                try {
+                    if (_isTopN) {
+                        sql = dbHelper.getRelatedTopNSQL(remoteDOClass, column, remoteField, inExpr);
+                    } else {
+                        sql = InnerCommonUtils.isBlank(column.extraWhere()) ? "where " + inExpr
+                                : SQLUtils.insertWhereAndExpression(column.extraWhere(), inExpr);
+                    }
+                } catch (JSQLParserException e) {
+                    LOGGER.error("wrong RelatedColumn extraWhere:{}, ignore extraWhere", column.extraWhere());
+                    throw new BadSQLSyntaxException(e);
+                }
+                chunkQueries.add(() -> {
+                    List<?> rows = _isTopN ? dbHelper.getRawForRelatedColumn(remoteDOClass, sql, chunk)
+                            : dbHelper.getAllForRelatedColumn(remoteDOClass, sql, chunk, true);
+                    if (loaded != null) {
+                        putRelatedColumnLoaded(loaded, remoteField, chunk, rows);
+                    }
+                    return rows;
+                });
+            }
+            if (chunkQueries.size() == 1 && result.isEmpty()) {
+                return chunkQueries.get(0).get();
+            }
+            for (List<?> rows : runRelatedQueries(chunkQueries)) {
+                if (rows != null) {
+                    result.addAll(rows);
+                }
+            }
+            return result;
+        };
+        if (relatedSelectColumns.isEmpty()) {
+            return query;
+        }
+        return () -> withRelatedSelectColumns(relatedSelectColumns, query);
+    }
+
+    /**
+     * @return 不在关联处理中时返回null
+     */
+    private Map<Object, List<Object>> getRelatedColumnLoaded(P1_QueryOp dbHelper, Class<?> remoteDOClass,
+                                                             RelatedColumn column) {
+        Map<List<Object>, Map<Object, List<Object>>> fetchContext = RELATED_COLUMN_FETCH_CONTEXT.get();
+        if (fetchContext == null) {
+            return null;
+        }
+        return fetchContext.computeIfAbsent(
+                Arrays.asList(dbHelper, remoteDOClass, column.remoteColumn(), column.extraWhere(),
+                        DBHelperContext.getTableName(remoteDOClass), DBHelperContext.getSelectColumns(remoteDOClass)),
+                k -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * 记录查询过的值关联到的数据，没有关联到数据的值也记录下来，避免再次查询
+     */
+    private void putRelatedColumnLoaded(Map<Object, List<Object>> loaded, List<DOInfoReader.RelatedField> remoteField,
+                                        Set<Object> values, List<?> rows) {
+        loaded.putAll(groupRelatedRows(remoteField, values, rows));
+    }
+
+    /**
+     * 把关联查询的结果按values分组，没有数据的值对应空列表
+     */
+    private Map<Object, List<Object>> groupRelatedRows(List<DOInfoReader.RelatedField> remoteField,
+                                                       Set<Object> values, List<?> rows) {
+        Map<Object, List<Object>> remoteValueMap = new HashMap<>();
+        Map<String, List<Object>> remoteValueStringMap = new HashMap<>();
+        if (rows != null) {
+            for (Object row : rows) {
+                Object remoteValue = DOInfoReader.getValueForRelatedColumn(remoteField, row);
+                if (remoteValue != null) {
+                    remoteValueMap.computeIfAbsent(remoteValue, k -> new ArrayList<>()).add(row);
+                    remoteValueStringMap.computeIfAbsent(remoteValue.toString(), k -> new ArrayList<>()).add(row);
+                }
+            }
+        }
+        Map<Object, List<Object>> result = new HashMap<>();
+        for (Object value : values) {
+            List<Object> valueRows = remoteValueMap.get(value);
+            if (valueRows == null) {
+                valueRows = remoteValueStringMap.getOrDefault(value.toString(), Collections.emptyList());
+            }
+            result.put(value, valueRows);
+        }
+        return result;
+    }
+
+    /**正在收集中的dataService批次，key是dataService、RelatedColumn注解、本地类、远程类、自定义表名、只查询的字段和SQL注释*/
+    private final Map<List<Object>, DataServiceBatch> dataServiceBatches = new ConcurrentHashMap<>();
+
+    private static class DataServiceBatch {
+        private final Set<Object> values = new LinkedHashSet<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+        private final CompletableFuture<Map<Object, List<Object>>> result = new CompletableFuture<>();
+        private boolean isClosed;
+    }
+
+    /**
+     * 调用dataService查询关联数据。设置了dataServiceBatchMillis时，合并该时间窗口内其它线程对同一个
+     * dataService和RelatedColumn的查询：第一个加入批次的线程等待窗口结束或批次满了之后，用去重后的值调用一次get，
+     * 再把结果按值分给批次中的各个线程。
+     */
+    private List<?> getFromDataService(IDBHelperDataService dataService, RelatedColumn column, Class<?> clazz,
+                                       Class<?> remoteDOClass, List<DOInfoReader.RelatedField> remoteField,
+                                       Set<Object> values) {
+        int batchMillis = dataServiceBatchMillis;
+        if (batchMillis <= 0) {
+            return dataService.get(new ArrayList<>(values), column, clazz, remoteDOClass);
+        }
+
+        // dataService的get由批次中第一个线程调用，所以只合并线程上下文相同的查询
+        Map<Class<?>, String> tableNames = DBHelperContext.getTableNames();
+        Map<Class<?>, Set<String>> selectColumns = DBHelperContext.getSelectColumns();
+        List<Object> key = Arrays.asList(dataService, column, clazz, remoteDOClass,
+                tableNames == null ? null : new HashMap<>(tableNames),
+                selectColumns == null ? null : new HashMap<>(selectColumns),
+                DBHelperContext.getThreadLocalComment());
+        DataServiceBatch batch;
+        boolean isLeader;
+        while (true) {
+            batch = dataServiceBatches.computeIfAbsent(key, k -> new DataServiceBatch());
+            synchronized (batch) {
+                if (batch.isClosed) { // 批次已经发出，重新获取新的批次
+                    continue;
+                }
+                isLeader = batch.values.isEmpty();
+                batch.values.addAll(values);
+                if (dataServiceMaxBatchSize > 0 && batch.values.size() >= dataServiceMaxBatchSize) {
+                    batch.isClosed = true;
+                    dataServiceBatches.remove(key, batch);
+                    batch.full.countDown();
+                }
+                break;
+            }
+        }
+
+        if (isLeader) {
+            try {
+                batch.full.await(batchMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (batch) {
+                batch.isClosed = true;
+                dataServiceBatches.remove(key, batch);
+            }
+            try {
+                List<?> rows = dataService.get(new ArrayList<>(batch.values), column, clazz, remoteDOClass);
+                batch.result.complete(groupRelatedRows(remoteField, batch.values, rows));
+            } catch (Throwable e) {
+                batch.result.completeExceptionally(e);
+            }
+        }
+
+        Map<Object, List<Object>> grouped;
+        try {
+            grouped = batch.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        List<Object> result = new ArrayList<>();
+        for (Object value : values) {
+            result.addAll(grouped.getOrDefault(value, Collections.emptyList()));
+        }
+        return result;
+    }
+
+    private List<Set<Object>> splitRelatedValues(Set<Object> values) {
+        int maxInSize = maxRelatedColumnInSize;
+        if (maxInSize <= 0 || values.size() <= maxInSize) {
+            return Collections.singletonList(values);
+        }
+        List<Set<Object>> chunks = new ArrayList<>();
+        Set<Object> chunk = new LinkedHashSet<>();
+        for (Object value : values) {
+            chunk.add(value);
+            if (chunk.size() >= maxInSize) {
+                chunks.add(chunk);
+                chunk = new LinkedHashSet<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**并行查询的线程中标记为true，此时嵌套的RelatedColumn不再并行*/
+    private static final ThreadLocal<Boolean> IS_IN_RELATED_COLUMN_WORKER = new ThreadLocal<>();
+
+    /**关联查询用到的线程上下文，用于带到并行查询的线程中，以及执行完后恢复该线程原来的值*/
+    private static class RelatedWorkerContext {
+        private final Boolean isInWorker;
+        private final Map<List<Object>, Map<Object, List<Object>>> fetchContext;
+        private final Map<Class<?>, String> tableNames;
+        private final Map<Class<?>, Set<String>> selectColumns;
+        private final String comment;
+
+        /**
+         * 获取当前线程的上下文
+         * @param isInWorker 设置到线程时IS_IN_RELATED_COLUMN_WORKER的值
+         */
+        private RelatedWorkerContext(Boolean isInWorker) {
+            this.isInWorker = isInWorker;
+            this.fetchContext = RELATED_COLUMN_FETCH_CONTEXT.get();
+            Map<Class<?>, String> tableNames = DBHelperContext.getTableNames();
+            this.tableNames = tableNames == null ? null : new HashMap<>(tableNames);
+            Map<Class<?>, Set<String>> selectColumns = DBHelperContext.getSelectColumns();
+            this.selectColumns = selectColumns == null ? null : new HashMap<>(selectColumns);
+            this.comment = DBHelperContext.getThreadLocalComment();
+        }
+
+        /**把上下文设置到当前线程，覆盖当前线程原有的值*/
+        private void apply() {
+            if (isInWorker == null) {
+                IS_IN_RELATED_COLUMN_WORKER.remove();
+            } else {
+                IS_IN_RELATED_COLUMN_WORKER.set(isInWorker);
+            }
+            if (fetchContext == null) {
+                RELATED_COLUMN_FETCH_CONTEXT.remove();
+            } else {
+                RELATED_COLUMN_FETCH_CONTEXT.set(fetchContext);
+            }
+            DBHelperContext.resetTableName();
+            if (tableNames != null) {
+                tableNames.forEach(DBHelperContext::setTableName);
+            }
+            DBHelperContext.resetSelectColumns();
+            if (selectColumns != null) {
+                selectColumns.forEach(DBHelperContext::setSelectColumns);
+            }
+            DBHelperContext.setThreadLocalComment(comment);
+        }
+    }
+
+    /**一个RelatedColumn字段的待查询信息*/
+    private static class RelatedColumnTask<T> {
+        private final Field field;
+        private final RelatedColumn column;
+        private final List<T> tListFiltered;
+        private final List<DOInfoReader.RelatedField> localField;
+        private final List<DOInfoReader.RelatedField> remoteField;
+        private final Class<?> remoteDOClass;
+        private final Set<Object> values;
+
+        private RelatedColumnTask(Field field, RelatedColumn column, List<T> tListFiltered,
+                                  List<DOInfoReader.RelatedField> localField,
+                                  List<DOInfoReader.RelatedField> remoteField,
+                                  Class<?> remoteDOClass, Set<Object> values) {
+            this.field = field;
+            this.column = column;
+            this.tListFiltered = tListFiltered;
+            this.localField = localField;
+            this.remoteField = remoteField;
+            this.remoteDOClass = remoteDOClass;
+            this.values = values;
+        }
+    }
+
+    /**
+     * 只查询部分字段时，关联匹配用到的远程字段也需要查询
+     * @return 需要补充字段的类和补充后的只查询字段，不需要补充时返回空Map
+     */
+    private static Map<Class<?>, Set<String>> getRelatedSelectColumns(Class<?> remoteDOClass,
+                                                                    List<DOInfoReader.RelatedField> remoteField) {
+        Map<Class<?>, Set<String>> result = new HashMap<>();
+        for (DOInfoReader.RelatedField remoteF : remoteField) {
+            Class<?> doClass = remoteF.fieldType == 1 ? DOInfoReader.getJoinLeftTable(remoteDOClass).getType()
+                    : remoteF.fieldType == 2 ? DOInfoReader.getJoinRightTable(remoteDOClass).getType() : remoteDOClass;
+            Set<String> selectColumns = result.containsKey(doClass) ? result.get(doClass)
+                    : DBHelperContext.getSelectColumns(doClass);
+            if (selectColumns != null && !selectColumns.contains(remoteF.field.getName())) {
+                Set<String> newSelectColumns = new HashSet<>(selectColumns);
+                newSelectColumns.add(remoteF.field.getName());
+                result.put(doClass, newSelectColumns);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在补充了关联字段的只查询字段设置下执行关联查询，执行完后还原，不影响调用方的设置
+     */
+    private static List<?> withRelatedSelectColumns(Map<Class<?>, Set<String>> selectColumns,
+                                                    Supplier<List<?>> query) {
+        Map<Class<?>, Set<String>> oldSelectColumns = new HashMap<>();
+        selectColumns.forEach((clazz, fieldNames) -> {
+            oldSelectColumns.put(clazz, DBHelperContext.getSelectColumns(clazz));
+            DBHelperContext.setSelectColumns(clazz, fieldNames);
+        });
+        try {
+            return query.get();
+        } finally {
+            oldSelectColumns.forEach(DBHelperContext::setSelectColumns);
+        }
+    }
+
     /**获得用于查询remoteColumn的列，如果多个列时用加上()*/
     private String getWhereColumnForRelated(List<DOInfoReader.RelatedField> remoteField) {
         boolean isSingleColumn = remoteField.size() == 1;
@@ -862,6 +2253,27 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         return sb.toString();
     }
 
+    /**
+     * extraWhere带limit时，一次查询出每个关联值前N条数据的SQL；特性关闭、多列关联、设置了拦截器或数据库不支持时返回null
+     */
+    private String getRelatedTopNSQL(Class<?> remoteDOClass, RelatedColumn column,
+                                     List<DOInfoReader.RelatedField> remoteField, String inExpr)
+            throws JSQLParserException {
+        if (!getFeature(FeatureEnum.RELATED_COLUMN_LIMIT_IN_ONE_QUERY) || remoteField.size() != 1) {
+            return null;
+        }
+        // 拼接的SQL不经过拦截器，设置了拦截器时按每个关联值逐个查询
+        if (!interceptors.isEmpty()) {
+            return null;
+        }
+        DatabaseEnum databaseType = getDatabaseType();
+        if (databaseType == DatabaseEnum.MYSQL && getDatabaseMajorVersion() < 8) { // MySQL 8才支持窗口函数
+            return null;
+        }
+        return SQLUtils.getRelatedColumnTopNSQL(remoteDOClass, getWhereColumnForRelated(remoteField),
+                column.extraWhere(), inExpr, databaseType, features);
+    }
+
     private String buildQuestionMark(Set<Object> values) {
         StringBuilder sb = new StringBuilder("(");
         boolean isFirst = true;
@@ -890,7 +2302,8 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
         return sb.toString();
     }
 
-    private <T> List<T> getAllForRelatedColumn(final Class<T> clazz, String postSql, Set<Object> values) {
+    private <T> List<T> getAllForRelatedColumn(final Class<T> clazz, String postSql, Set<Object> values,
+                                               boolean isHandleRelatedColumn) {
         List<Object> param = new ArrayList<>();
         for (Object obj : values) {
             if (obj instanceof List) {
@@ -900,8 +2313,25 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
             }
         }
 
-        return _getPage(clazz, false, false,
-                false, null, null, postSql, param.toArray()).getData();
+        return _getPage(clazz, false, false, isHandleRelatedColumn,
+                null, null, null, postSql, param.toArray()).getData();
+    }
+
+    /**
+     * 执行extraWhere带limit时一次查询出每个关联值前N条数据的完整SQL，只在没有设置拦截器时使用
+     */
+    private <T> List<T> getRawForRelatedColumn(final Class<T> clazz, String sql, Set<Object> values) {
+        List<Object> argsList = new ArrayList<>(values);
+        sql = addComment(sql);
+        log(sql, 0, argsList);
+
+        long start = System.currentTimeMillis();
+        List<T> list = jdbcTemplate.query(sql, new AnnotationSupportRowMapper<>(this, clazz, false), argsList.toArray());
+        handleRelatedColumn(list);
+
+        long cost = System.currentTimeMillis() - start;
+        logSlow(cost, sql, 0, argsList);
+        return list;
     }
 
     private <T> List<T> getAllForRelatedColumnBySingleValue(final Class<T> clazz, String postSql, Set<Object> values) {
@@ -912,7 +2342,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
             param.add(value);
 
             List<T> results = _getPage(clazz, false, false,
-                    false, null, null, postSql, param.toArray()).getData();
+                    null, null, null, postSql, param.toArray()).getData();
             result.addAll(results);
         }
 
@@ -17,6 +17,7 @@ import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public abstract class P2_InsertOp extends P1_QueryOp {
@@ -180,6 +181,7 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 
 		long cost = System.currentTimeMillis() - start;
 		logSlow(cost, sqlForLog, list.size(), paramForLog);
+		evictCache(list.iterator().next().getClass(), list);
 
 		if (withInterceptor) {
 			doInterceptAfterInsertList(list, total);
@@ -235,6 +237,7 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 
 		long cost = System.currentTimeMillis() - start;
 		logSlow(cost, sql, 0, values);
+		evictCache(t.getClass(), Collections.singletonList(t));
 		
 		if(withInterceptor) {
 			doInterceptAfterInsert(t, rows);
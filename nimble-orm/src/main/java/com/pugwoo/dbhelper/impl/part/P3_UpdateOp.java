@@ -143,6 +143,7 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 
 			rows = namedJdbcExecuteUpdateWithLog(batchUpdateSQL.getSql(),
 					batchUpdateSQL.getLogSql(), list.size(), batchUpdateSQL.getLogParams(), params.toArray());
+			evictCache(clazz, list);
 
 			postHandleCasVersion(list, rows, casVersionColumn, clazz);
 
@@ -181,6 +182,7 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		}
 		
 		int rows = namedJdbcExecuteUpdate(sql, values.toArray());
+		evictCache(t.getClass(), tList);
 
 		postHandleCasVersion(t, rows);
 
@@ -251,6 +253,7 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		doInterceptBeforeUpdate(tList, setSql, values);
 
 		int rows = namedJdbcExecuteUpdate(sql, values.toArray());
+		evictCache(t.getClass(), tList);
 
 		postHandleCasVersion(t, rows);
 
@@ -297,7 +300,9 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		
 		sql = SQLUtils.getUpdateAllSQL(clazz, setSql, whereSql, null);
 
-		return namedJdbcExecuteUpdate(sql, values.toArray());
+		int rows = namedJdbcExecuteUpdate(sql, values.toArray());
+		evictCache(clazz, null);
+		return rows;
 	}
 	
 }
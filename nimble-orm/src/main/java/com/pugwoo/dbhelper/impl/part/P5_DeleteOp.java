@@ -130,6 +130,7 @@ public abstract class P5_DeleteOp extends P4_InsertOrUpdateOp {
 		}
 
 		int rows = jdbcExecuteUpdate(sql, values.toArray()); // 不会有in(?)表达式
+		evictCache(t.getClass(), Collections.singletonList(t));
 
 		doInterceptAfterDelete(t, rows);
 		return rows;
@@ -249,6 +250,7 @@ public abstract class P5_DeleteOp extends P4_InsertOrUpdateOp {
 			}
 
 			int rows = namedJdbcExecuteUpdate(sql, keys);
+			evictCache(clazz, listTmp);
 
 			doInterceptAfterDelete(listTmp, rows);
 			return rows;
@@ -315,7 +317,9 @@ public abstract class P5_DeleteOp extends P4_InsertOrUpdateOp {
 				}
 			}
 
-			return namedJdbcExecuteUpdate(sql, args);
+			int rows = namedJdbcExecuteUpdate(sql, args);
+			evictCache(clazz, null);
+			return rows;
 		} else { // 配置了拦截器，则先查出key，再删除
 			List<T> allKey = getAllKey(clazz, postSql, args);
 			return delete(allKey);
@@ -7,7 +7,9 @@ public class P6_ExecuteOp extends P5_DeleteOp {
 
     @Override
     public int executeRaw(String sql, Object... args) {
-        return namedJdbcExecuteUpdate(sql, args);
+        int rows = namedJdbcExecuteUpdate(sql, args);
+        evictCache(sql);
+        return rows;
     }
 
     @Override
@@ -25,6 +27,7 @@ public class P6_ExecuteOp extends P5_DeleteOp {
 
         long cost = System.currentTimeMillis() - start;
         logSlow(cost, sql, 0, paramMap);
+        evictCache(sql);
         return rows;
     }
 
@@ -0,0 +1,41 @@
+package com.pugwoo.dbhelper.model;
+
+import java.util.List;
+
+/**
+ * 游标分页(keyset分页)的结果，不查询总数，total固定为-1
+ */
+public class CursorPageData<T> extends PageData<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 下一页的游标，传给getPageByCursor查询下一页；为null表示已经没有下一页
+	 */
+	private String nextCursor;
+
+	public CursorPageData() {
+		setTotal(-1);
+	}
+
+	public CursorPageData(List<T> data, int pageSize, String nextCursor) {
+		super(-1, data, pageSize);
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * 是否还有下一页
+	 */
+	public boolean isHasNext() {
+		return nextCursor != null;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+}
@@ -1,6 +1,7 @@
 package com.pugwoo.dbhelper.sql;
 
 import com.pugwoo.dbhelper.annotation.*;
+import com.pugwoo.dbhelper.cache.LRUCache;
 import com.pugwoo.dbhelper.enums.DatabaseEnum;
 import com.pugwoo.dbhelper.enums.FeatureEnum;
 import com.pugwoo.dbhelper.enums.JoinTypeEnum;
@@ -10,16 +11,19 @@ import com.pugwoo.dbhelper.json.NimbleOrmJSON;
 import com.pugwoo.dbhelper.utils.*;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
 import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.select.*;
+import net.sf.jsqlparser.util.TablesNamesFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * SQL解析工具类
@@ -42,6 +46,17 @@ public class SQLUtils {
 	 */
 	public static String getSelectSQL(Class<?> clazz, boolean selectOnlyKey, boolean isSelect1,
 									  Map<FeatureEnum, Boolean> features, String postSql) {
+		// select 1时带上的计算列取决于postSql，这种情况不缓存
+		if (!DBHelperContext.isCacheEnabled() || (isSelect1 && hasComputedColumn(clazz))) {
+			return buildSelectSQL(clazz, selectOnlyKey, isSelect1, features, postSql);
+		}
+		int type = isSelect1 ? SelectSQLKey.SELECT_1 : (selectOnlyKey ? SelectSQLKey.SELECT_KEY : SelectSQLKey.SELECT);
+		return getCachedSelectSQL(clazz, type, features,
+				() -> buildSelectSQL(clazz, selectOnlyKey, isSelect1, features, postSql));
+	}
+
+	private static String buildSelectSQL(Class<?> clazz, boolean selectOnlyKey, boolean isSelect1,
+										 Map<FeatureEnum, Boolean> features, String postSql) {
 		StringBuilder sql = new StringBuilder();
 		sql.append("SELECT ");
 
@@ -155,6 +170,13 @@ public class SQLUtils {
 	 * @return 生成的SQL
 	 */
 	public static String getSelectCountSQL(Class<?> clazz) {
+		if (!DBHelperContext.isCacheEnabled()) {
+			return buildSelectCountSQL(clazz);
+		}
+		return getCachedSelectSQL(clazz, SelectSQLKey.SELECT_COUNT, null, () -> buildSelectCountSQL(clazz));
+	}
+
+	private static String buildSelectCountSQL(Class<?> clazz) {
 		StringBuilder sql = new StringBuilder();
 		sql.append("SELECT count(*)");
 		
@@ -208,6 +230,93 @@ public class SQLUtils {
 		return sql.toString();
 	}
 	
+	/**自定义表名和只查询的字段来自线程上下文，组合数量不可控，所以用定长的LRU缓存*/
+	private static final LRUCache<SelectSQLKey, String> selectSQLCache = new LRUCache<>(2048);
+
+	/**
+	 * 从缓存中获取select/count语句的前缀。缓存key只包含该类(join VO则是左右两个表的类)在当前线程的
+	 * 自定义表名和只查询的字段，其它类的设置不影响缓存命中
+	 */
+	private static String getCachedSelectSQL(Class<?> clazz, int type, Map<FeatureEnum, Boolean> features,
+											 Supplier<String> builder) {
+		boolean autoSumNullToZero = features != null
+				&& Boolean.TRUE.equals(features.get(FeatureEnum.AUTO_SUM_NULL_TO_ZERO));
+		SelectSQLKey key = new SelectSQLKey(clazz, type, autoSumNullToZero, getSelectSQLContext(clazz));
+
+		String sql = selectSQLCache.get(key);
+		if (sql == null) {
+			sql = builder.get();
+			selectSQLCache.put(key, sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * 获得影响clazz的select语句的线程上下文：依次为每个相关类的自定义表名和只查询的字段，没有设置时为null
+	 */
+	private static List<Object> getSelectSQLContext(Class<?> clazz) {
+		JoinTable joinTable = DOInfoReader.getJoinTable(clazz);
+		if (joinTable == null) {
+			return Arrays.asList(DBHelperContext.getTableName(clazz), DBHelperContext.getSelectColumns(clazz));
+		}
+		Class<?> leftClass = DOInfoReader.getJoinLeftTable(clazz).getType();
+		Class<?> rightClass = DOInfoReader.getJoinRightTable(clazz).getType();
+		return Arrays.asList(DBHelperContext.getTableName(leftClass), DBHelperContext.getSelectColumns(leftClass),
+				DBHelperContext.getTableName(rightClass), DBHelperContext.getSelectColumns(rightClass));
+	}
+
+	private static boolean hasComputedColumn(Class<?> clazz) {
+		JoinTable joinTable = DOInfoReader.getJoinTable(clazz);
+		if (joinTable != null) {
+			return hasComputedColumn(DOInfoReader.getJoinLeftTable(clazz).getType())
+					|| hasComputedColumn(DOInfoReader.getJoinRightTable(clazz).getType());
+		}
+		for (Field field : DOInfoReader.getColumns(clazz)) {
+			if (InnerCommonUtils.isNotBlank(field.getAnnotation(Column.class).computed())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class SelectSQLKey {
+		private static final int SELECT = 0;
+		private static final int SELECT_KEY = 1;
+		private static final int SELECT_1 = 2;
+		private static final int SELECT_COUNT = 3;
+
+		private final Class<?> clazz;
+		private final int type;
+		private final boolean autoSumNullToZero;
+		/**相关类在当前线程的自定义表名和只查询的字段*/
+		private final List<Object> context;
+
+		private SelectSQLKey(Class<?> clazz, int type, boolean autoSumNullToZero, List<Object> context) {
+			this.clazz = clazz;
+			this.type = type;
+			this.autoSumNullToZero = autoSumNullToZero;
+			this.context = context;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof SelectSQLKey)) {
+				return false;
+			}
+			SelectSQLKey that = (SelectSQLKey) o;
+			return type == that.type && autoSumNullToZero == that.autoSumNullToZero
+					&& clazz == that.clazz && context.equals(that.context);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(clazz, type, autoSumNullToZero, context);
+		}
+	}
+
 	/**
 	 * 获得主键where子句，包含where关键字。会自动处理软删除条件
 	 * 
@@ -959,9 +1068,138 @@ public class SQLUtils {
 		if(!whereSql.toUpperCase().startsWith("WHERE ")) {
 			return "WHERE " + condExpression + " " + whereSql;
 		}
-		
-		// 为解决JSqlParse对复杂的condExpression不支持的问题，这里用替换的形式来达到目的
-	    String magic = "A" + UUID.randomUUID().toString().replace("-", "");
+
+		// 简单的where子句直接拼接，不需要JSqlParser解析
+		SimpleWhereSQL simpleWhereSQL = SimpleWhereSQL.parse(whereSql);
+		if (simpleWhereSQL != null && simpleWhereSQL.conditionStart >= 0) {
+			String condition = whereSql.substring(simpleWhereSQL.conditionStart, simpleWhereSQL.conditionEnd).trim();
+			String tail = whereSql.substring(simpleWhereSQL.conditionEnd).trim();
+			return "WHERE ((" + condition + ") AND " + condExpression + ")" + (tail.isEmpty() ? "" : " " + tail);
+		}
+
+		if (!DBHelperContext.isCacheEnabled()) {
+			return _insertWhereAndExpression(whereSql, condExpression);
+		}
+		List<Object> cacheKey = Arrays.asList(whereSql, condExpression);
+		String cached = insertWhereCache.get(cacheKey);
+		if (cached != null) {
+			return cached;
+		}
+		String result = _insertWhereAndExpression(whereSql, condExpression);
+		insertWhereCache.put(cacheKey, result);
+		return result;
+	}
+
+	/**
+	 * 生成游标分页的postSql：在postSql的where条件中加上大于游标的条件，并按游标列升序排序。<br>
+	 * 多列游标生成 (a&gt;? OR (a=? AND b&gt;?)) 形式的条件，和 (a,b)&gt;(?,?) 等价，但各数据库都支持。
+	 * @param cursorFields 游标列，多列组合起来要求唯一
+	 * @param cursorValues 游标列的值，和cursorFields一一对应；为null表示查询第一页
+	 * @param postSql 只能包含where条件，不能包含group by/having/order by/limit子句
+	 * @param values 游标条件的参数会加到这个列表里
+	 * @return 注意返回字符串前面没有空格
+	 */
+	public static String getCursorPostSql(List<Field> cursorFields, List<Object> cursorValues,
+										  String postSql, List<Object> values) throws JSQLParserException {
+		assertOnlyWhereCondition(postSql);
+
+		String where = postSql == null ? "" : postSql.trim();
+		if (cursorValues != null) {
+			StringBuilder cond = new StringBuilder("(");
+			for (int i = 0; i < cursorFields.size(); i++) {
+				if (i > 0) {
+					cond.append(" OR (");
+				}
+				for (int j = 0; j < i; j++) {
+					cond.append(getColumnName(cursorFields.get(j))).append("=? AND ");
+					values.add(cursorValues.get(j));
+				}
+				cond.append(getColumnName(cursorFields.get(i))).append(">?");
+				values.add(cursorValues.get(i));
+				if (i > 0) {
+					cond.append(")");
+				}
+			}
+			cond.append(")");
+			where = insertWhereAndExpression(where, cond.toString()).trim();
+		}
+
+		StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+		for (int i = 0; i < cursorFields.size(); i++) {
+			if (i > 0) {
+				orderBy.append(",");
+			}
+			orderBy.append(getColumnName(cursorFields.get(i)));
+		}
+		return where + orderBy;
+	}
+
+	/**
+	 * 判断postSql是否没有where/group by/having子句，即查询的是全表数据；无法判断时返回false
+	 */
+	public static boolean isWithoutCondition(String postSql) {
+		if (InnerCommonUtils.isBlank(postSql)) {
+			return true;
+		}
+		SimpleWhereSQL simpleWhereSQL = SimpleWhereSQL.parse(postSql);
+		// 没有where时，order by/limit之前不能有其它内容
+		return simpleWhereSQL != null && simpleWhereSQL.conditionStart < 0
+				&& simpleWhereSQL.groupByStart < 0 && simpleWhereSQL.havingStart < 0
+				&& postSql.substring(0, simpleWhereSQL.conditionEnd).trim().isEmpty();
+	}
+
+	/**
+	 * 判断postSql是否没有group by/having子句；无法判断时返回false
+	 */
+	public static boolean isWithoutGroupBy(String postSql) {
+		if (InnerCommonUtils.isBlank(postSql)) {
+			return true;
+		}
+		SimpleWhereSQL simpleWhereSQL = SimpleWhereSQL.parse(postSql);
+		if (simpleWhereSQL != null) {
+			return simpleWhereSQL.groupByStart < 0 && simpleWhereSQL.havingStart < 0;
+		}
+		try {
+			Statement statement = CCJSqlParserUtil.parse("select * from dual " + postSql);
+			PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+			return plainSelect.getGroupBy() == null && plainSelect.getHaving() == null;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private static void assertOnlyWhereCondition(String postSql) throws JSQLParserException {
+		if (InnerCommonUtils.isBlank(postSql)) {
+			return;
+		}
+		SimpleWhereSQL simpleWhereSQL = SimpleWhereSQL.parse(postSql);
+		boolean isOnlyWhere;
+		if (simpleWhereSQL != null) {
+			isOnlyWhere = simpleWhereSQL.conditionStart >= 0 && simpleWhereSQL.conditionEnd == postSql.length();
+		} else {
+			Statement statement = CCJSqlParserUtil.parse("select * from dual " + postSql);
+			PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+			isOnlyWhere = plainSelect.getWhere() != null && plainSelect.getGroupBy() == null
+					&& plainSelect.getHaving() == null && plainSelect.getOrderByElements() == null
+					&& plainSelect.getLimit() == null && plainSelect.getOffset() == null;
+		}
+		if (!isOnlyWhere) {
+			throw new BadSQLSyntaxException("postSql of cursor pagination can only contain where condition, postSql:"
+					+ postSql);
+		}
+	}
+
+	/**postSql可能是用户拼接的，数量不可控，所以用定长的LRU缓存*/
+	private static final int REWRITE_SQL_CACHE_SIZE = 2048;
+	private static final LRUCache<List<Object>, String> insertWhereCache = new LRUCache<>(REWRITE_SQL_CACHE_SIZE);
+	private static final LRUCache<List<Object>, String> removeLimitAndAddOrderCache = new LRUCache<>(REWRITE_SQL_CACHE_SIZE);
+
+	/**为解决JSqlParse对复杂的condExpression不支持的问题，用替换的形式来达到目的，这是替换用的占位符*/
+	private static final String WHERE_EXPRESSION_MAGIC = "A" + UUID.randomUUID().toString().replace("-", "");
+
+	private static String _insertWhereAndExpression(String whereSql, String condExpression)
+			throws JSQLParserException {
+	    String magic = WHERE_EXPRESSION_MAGIC;
 		
 		String selectSql = "select * from dual "; // 辅助where sql解析用
 		Statement statement = CCJSqlParserUtil.parse(selectSql + whereSql);
@@ -1065,6 +1303,47 @@ public class SQLUtils {
 			return getDefaultOrderBy(clazz);
 		}
 
+		String simpleResult = removeLimitAndAddOrderForSimpleSQL(whereSql, autoAddOrderForPagination, clazz);
+		if (simpleResult != null) {
+			return simpleResult;
+		}
+
+		if (!DBHelperContext.isCacheEnabled()) {
+			return _removeLimitAndAddOrder(whereSql, autoAddOrderForPagination, clazz);
+		}
+		List<Object> cacheKey = Arrays.asList(whereSql, autoAddOrderForPagination, clazz);
+		String cached = removeLimitAndAddOrderCache.get(cacheKey);
+		if (cached != null) {
+			return cached;
+		}
+		String result = _removeLimitAndAddOrder(whereSql, autoAddOrderForPagination, clazz);
+		removeLimitAndAddOrderCache.put(cacheKey, result);
+		return result;
+	}
+
+	/**
+	 * 对于没有group by的简单子句，直接截掉limit并追加默认的order by，不需要JSqlParser解析
+	 * @return 不是简单子句时返回null
+	 */
+	private static String removeLimitAndAddOrderForSimpleSQL(String whereSql, boolean autoAddOrderForPagination,
+															 Class<?> clazz) {
+		SimpleWhereSQL simpleWhereSQL = SimpleWhereSQL.parse(whereSql);
+		if (simpleWhereSQL == null || simpleWhereSQL.groupByStart >= 0) {
+			return null; // group by时默认的order by是group by的字段，交给JSqlParser处理
+		}
+		if (simpleWhereSQL.offsetStart >= 0) {
+			return null; // 有OFFSET子句时order by要加在OFFSET之前，交给JSqlParser处理
+		}
+
+		String sql = simpleWhereSQL.limitStart >= 0 ? whereSql.substring(0, simpleWhereSQL.limitStart) : whereSql;
+		if (autoAddOrderForPagination && simpleWhereSQL.orderByStart < 0) {
+			return sql.trim() + PlainSelect.orderByToString(getDefaultOrderByElement(clazz));
+		}
+		return simpleWhereSQL.limitStart >= 0 ? sql.trim() : whereSql;
+	}
+
+	private static String _removeLimitAndAddOrder(String whereSql, boolean autoAddOrderForPagination, Class<?> clazz) {
+
 		String selectSql = "SELECT * FROM dual "; // 辅助where sql解析用，这个大小写不能改动！
 		Statement statement;
 		try {
@@ -1298,6 +1577,124 @@ public class SQLUtils {
 
 	private static final Map<String, Boolean> containsLimitCache = new ConcurrentHashMap<>();
 
+	/**
+	 * 获得sql中涉及的表名，去掉库名和引号并转成小写
+	 * @return 解析失败时返回null
+	 */
+	public static List<String> getTableNames(String sql) {
+		try {
+			List<String> tableNames = new ArrayList<>();
+			for (String tableName : new TablesNamesFinder().getTableList(CCJSqlParserUtil.parse(sql))) {
+				tableName = tableName.substring(tableName.lastIndexOf('.') + 1);
+				tableName = tableName.replace("`", "").replace("\"", "");
+				tableNames.add(tableName.toLowerCase());
+			}
+			return tableNames;
+		} catch (Exception e) {
+			LOGGER.warn("fail to get table names from sql:{}", sql, e);
+			return null;
+		}
+	}
+
+	/**
+	 * 生成RelatedColumn的extraWhere带limit时，一次查询出每个关联值各自前N条数据的SQL。<br>
+	 * MySQL使用ROW_NUMBER()窗口函数，ClickHouse使用LIMIT n BY；
+	 * 数据库不支持、extraWhere带group by/having或limit不是常量时返回null，由调用方降级为逐个值查询。<br>
+	 * 不同的inExpr调用时extraWhere只解析一次。
+	 * @param clazz 关联的DO类，只支持非虚拟表的@Table类
+	 * @param remoteColumn 关联的列，单列
+	 * @param extraWhere RelatedColumn的extraWhere
+	 * @param inExpr 关联列的in条件，例如 `id` in (?,?)
+	 * @param databaseType 数据库类型
+	 * @param features 将dbHelper的特性开关传入，用于处理生成的SQL
+	 */
+	public static String getRelatedColumnTopNSQL(Class<?> clazz, String remoteColumn, String extraWhere, String inExpr,
+												 DatabaseEnum databaseType, Map<FeatureEnum, Boolean> features)
+			throws JSQLParserException {
+		if (databaseType != DatabaseEnum.MYSQL && databaseType != DatabaseEnum.CLICKHOUSE) {
+			return null;
+		}
+		if (DOInfoReader.getJoinTable(clazz) != null || DOInfoReader.isVirtualTable(clazz)) {
+			return null;
+		}
+
+		RelatedTopN topN = relatedTopNCache.get(extraWhere);
+		if (topN == null) {
+			topN = parseRelatedTopN(extraWhere);
+			relatedTopNCache.put(extraWhere, topN); // 这里能用缓存是因为extraWhere来自于注解，数量固定
+		}
+		if (topN.rowCount < 0) {
+			return null;
+		}
+		long offset = topN.offset;
+		long rowCount = topN.rowCount;
+		String orderBy = topN.orderBy;
+		String where = topN.where.isEmpty() ? "WHERE " + inExpr : "WHERE (" + topN.where + ") AND " + inExpr;
+		where = autoSetSoftDeleted(where, clazz);
+
+		String alias = DOInfoReader.getTable(clazz).alias();
+		StringBuilder sql = new StringBuilder("SELECT ");
+		sql.append(join(DOInfoReader.getColumnsForSelect(clazz, false), ",", features));
+		if (databaseType == DatabaseEnum.MYSQL) {
+			sql.append(" FROM (SELECT ").append(alias).append(".*,ROW_NUMBER() OVER (PARTITION BY ")
+					.append(remoteColumn);
+			if (orderBy.length() > 0) {
+				sql.append(" ORDER BY ").append(orderBy);
+			}
+			sql.append(") AS ").append(RELATED_COLUMN_ROW_NUMBER)
+					.append(" FROM ").append(getTableName(clazz)).append(" ").append(alias).append(where)
+					.append(") ").append(alias)
+					.append(" WHERE ").append(RELATED_COLUMN_ROW_NUMBER).append(">").append(offset)
+					.append(" AND ").append(RELATED_COLUMN_ROW_NUMBER).append("<=").append(offset + rowCount);
+			if (orderBy.length() > 0) {
+				sql.append(" ORDER BY ").append(orderBy);
+			}
+		} else {
+			sql.append(" FROM ").append(getTableName(clazz)).append(" ").append(alias).append(where);
+			if (orderBy.length() > 0) {
+				sql.append(" ORDER BY ").append(orderBy);
+			}
+			sql.append(" LIMIT ").append(offset).append(",").append(rowCount).append(" BY ").append(remoteColumn);
+		}
+		return sql.toString();
+	}
+
+	private static RelatedTopN parseRelatedTopN(String extraWhere) throws JSQLParserException {
+		RelatedTopN topN = new RelatedTopN();
+		Statement statement = CCJSqlParserUtil.parse("select * from dual " + extraWhere);
+		PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+		Limit limit = plainSelect.getLimit();
+		if (limit == null || plainSelect.getGroupBy() != null || plainSelect.getHaving() != null
+				|| plainSelect.getOffset() != null || !(limit.getRowCount() instanceof LongValue)
+				|| (limit.getOffset() != null && !(limit.getOffset() instanceof LongValue))) {
+			topN.rowCount = -1; // 不支持
+			return topN;
+		}
+		topN.rowCount = ((LongValue) limit.getRowCount()).getValue();
+		topN.offset = limit.getOffset() == null ? 0 : ((LongValue) limit.getOffset()).getValue();
+		topN.where = plainSelect.getWhere() == null ? "" : plainSelect.getWhere().toString();
+		StringBuilder orderBy = new StringBuilder();
+		if (plainSelect.getOrderByElements() != null) {
+			for (OrderByElement ele : plainSelect.getOrderByElements()) {
+				orderBy.append(orderBy.length() == 0 ? "" : ",").append(ele);
+			}
+		}
+		topN.orderBy = orderBy.toString();
+		return topN;
+	}
+
+	/**extraWhere解析出的where条件、order by和limit，rowCount小于0表示不支持一次查询*/
+	private static class RelatedTopN {
+		String where;
+		String orderBy;
+		long offset;
+		long rowCount;
+	}
+
+	private static final Map<String, RelatedTopN> relatedTopNCache = new ConcurrentHashMap<>();
+
+	private static final String RELATED_COLUMN_ROW_NUMBER = "_nimble_orm_rn";
+
     /**
      * 拼凑select的field的语句
      */
@@ -1455,7 +1852,7 @@ public class SQLUtils {
     
 	/**
 	 * 拼凑set子句，将会处理casVersion的字段自动+1
-	 * @param withNull 当为true时，如果field的值为null，也加入
+	 * @param withNull 当为true时，如果field的值为null，也加入；延迟加载的字段为null时可能是没有加载，不加入
 	 */
 	private static String joinSetAndGetValue(List<Field> fields,
 			List<Object> values, Object obj, boolean withNull) {
@@ -1480,7 +1877,7 @@ public class SQLUtils {
 				if (value != null && column.isJSON()) {
 					value = NimbleOrmJSON.toJson(value);
 				}
-				if (withNull || value != null) {
+				if (value != null || (withNull && !DOInfoReader.isLazyColumn(field))) {
 					sb.append(getColumnName(column)).append("=?,");
 					values.add(value);
 				}
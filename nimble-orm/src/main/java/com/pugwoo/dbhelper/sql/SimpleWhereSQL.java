@@ -0,0 +1,229 @@
+package com.pugwoo.dbhelper.sql;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 简单where子句的识别，用于在不构建JSqlParser语法树的情况下插入条件、移除limit和追加order by。<br>
+ * 只识别形如 [WHERE 条件] [GROUP BY ...] [HAVING ...] [ORDER BY ...] [LIMIT ...] [OFFSET ...] 的子句，
+ * 条件中不能有子查询、注释、分号等；括号外出现两个相邻的操作数(例如ClickHouse的 LIMIT 10 SETTINGS ...)
+ * 说明有不认识的子句。无法确认是简单子句的，parse返回null，由调用方走JSqlParser解析。
+ *
+ * @author pugwoo
+ */
+class SimpleWhereSQL {
+
+	/**出现这些关键字时认为不是简单子句*/
+	private static final Set<String> UNSUPPORTED_KEYWORDS = new HashSet<>(Arrays.asList(
+			"SELECT", "UNION", "EXCEPT", "INTERSECT", "FOR", "LOCK", "INTO", "WINDOW", "PROCEDURE", "WITH"));
+
+	/**括号外可以跟在操作数后面的运算符关键字，它们之后需要新的操作数*/
+	private static final Set<String> OPERATOR_KEYWORDS = new HashSet<>(Arrays.asList(
+			"AND", "OR", "XOR", "NOT", "IN", "IS", "LIKE", "REGEXP", "RLIKE", "BETWEEN", "ESCAPE", "DIV", "MOD",
+			"CASE", "WHEN", "THEN", "ELSE", "NULLS", "COLLATE"));
+
+	/**括号外可以跟在操作数后面、且本身结束一个操作数的关键字*/
+	private static final Set<String> POSTFIX_KEYWORDS = new HashSet<>(Arrays.asList(
+			"ASC", "DESC", "END"));
+
+	/**条件的开始位置，即WHERE关键字之后；没有WHERE时为-1*/
+	int conditionStart = -1;
+	/**条件的结束位置，即第一个GROUP/HAVING/ORDER/LIMIT/OFFSET子句的开始位置，没有这些子句时为sql的长度*/
+	int conditionEnd;
+	int groupByStart = -1;
+	int havingStart = -1;
+	int orderByStart = -1;
+	int limitStart = -1;
+	int offsetStart = -1;
+
+	private SimpleWhereSQL() {
+	}
+
+	/**
+	 * 识别简单的where子句
+	 * @return 不是简单子句时返回null
+	 */
+	static SimpleWhereSQL parse(String sql) {
+		SimpleWhereSQL result = new SimpleWhereSQL();
+		int length = sql.length();
+		int depth = 0;
+		boolean isFirstWord = true;
+		/*括号外上一个记号是否是一个操作数的结束，用于发现不认识的子句*/
+		boolean isAfterOperand = false;
+		/*当前已经出现的子句，用于检查子句顺序：1=GROUP BY 2=HAVING 3=ORDER BY 4=LIMIT 5=OFFSET*/
+		int clauseOrder = 0;
+
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			if (c == ';' || c == '#' || c == '\\') {
+				return null;
+			}
+			if ((c == '-' && i + 1 < length && sql.charAt(i + 1) == '-')
+					|| (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*')) {
+				return null;
+			}
+
+			int start = i;
+			if (c == '\'' || c == '"' || c == '`') {
+				i = skipQuoted(sql, i, c);
+				if (i < 0) {
+					return null;
+				}
+				if (start > 0 && sql.charAt(start - 1) == '.') {
+					continue; // 例如t1.`name`，和前面的表别名是同一个操作数
+				}
+			} else if (Character.isLetterOrDigit(c) || c == '_' || c == '?'
+					|| (c == ':' && i + 1 < length && Character.isLetter(sql.charAt(i + 1)))) {
+				i++; // 数字、?参数、:命名参数以及普通的词
+				while (i < length && isWordChar(sql.charAt(i))) {
+					i++;
+				}
+				String word = sql.substring(start, i).toUpperCase();
+				if (UNSUPPORTED_KEYWORDS.contains(word)) {
+					return null;
+				}
+				if ("WHERE".equals(word)) {
+					if (!isFirstWord || depth > 0) {
+						return null;
+					}
+					result.conditionStart = i;
+					isFirstWord = false;
+					continue;
+				}
+				isFirstWord = false;
+				if (depth > 0) {
+					continue;
+				}
+
+				int clause = 0;
+				int clauseEnd = i;
+				if ("GROUP".equals(word) && (clauseEnd = getNextWordByEnd(sql, i)) > 0) {
+					clause = 1;
+					result.groupByStart = start;
+				} else if ("HAVING".equals(word)) {
+					clause = 2;
+					result.havingStart = start;
+				} else if ("ORDER".equals(word) && (clauseEnd = getNextWordByEnd(sql, i)) > 0) {
+					clause = 3;
+					result.orderByStart = start;
+				} else if ("LIMIT".equals(word)) {
+					clause = 4;
+					result.limitStart = start;
+				} else if ("OFFSET".equals(word)) {
+					clause = 5;
+					result.offsetStart = start;
+				}
+				if (clause > 0) {
+					if (clause <= clauseOrder) {
+						return null;
+					}
+					clauseOrder = clause;
+					i = clauseEnd;
+					isAfterOperand = false;
+					continue;
+				}
+
+				if (OPERATOR_KEYWORDS.contains(word)) {
+					isAfterOperand = false;
+					continue;
+				}
+				if (POSTFIX_KEYWORDS.contains(word)) {
+					if (!isAfterOperand) {
+						return null;
+					}
+					continue;
+				}
+			} else {
+				i++;
+				if (c == '(') {
+					depth++;
+				} else if (c == ')') {
+					if (--depth < 0) {
+						return null;
+					}
+				}
+				isFirstWord = false;
+				if (depth == 0) {
+					isAfterOperand = c == ')';
+				}
+				continue;
+			}
+
+			isFirstWord = false;
+			if (depth == 0) {
+				if (isAfterOperand) {
+					return null; // 两个相邻的操作数，说明有不认识的关键字或子句
+				}
+				isAfterOperand = true;
+			}
+		}
+
+		if (depth != 0) {
+			return null;
+		}
+
+		result.conditionEnd = length;
+		for (int start : new int[]{result.groupByStart, result.havingStart, result.orderByStart,
+				result.limitStart, result.offsetStart}) {
+			if (start >= 0) {
+				result.conditionEnd = start;
+				break;
+			}
+		}
+		if (result.conditionStart >= 0
+				&& sql.substring(result.conditionStart, result.conditionEnd).trim().isEmpty()) {
+			return null; // WHERE后面没有条件
+		}
+		return result;
+	}
+
+	/**
+	 * 跳过引号内的内容，支持反斜杠转义和两个连续引号的转义
+	 * @return 引号结束后的位置，引号没有结束时返回-1
+	 */
+	private static int skipQuoted(String sql, int start, char quote) {
+		int i = start + 1;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '\\' && quote != '`') {
+				i += 2;
+				continue;
+			}
+			if (c == quote) {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+	}
+
+	/**
+	 * 如果from之后的下一个词是BY，返回BY之后的位置，否则返回-1
+	 */
+	private static int getNextWordByEnd(String sql, int from) {
+		int i = from;
+		while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+			i++;
+		}
+		if (i + 2 <= sql.length() && sql.substring(i, i + 2).equalsIgnoreCase("BY")
+				&& (i + 2 == sql.length() || !isWordChar(sql.charAt(i + 2)))) {
+			return i + 2;
+		}
+		return -1;
+	}
+
+}
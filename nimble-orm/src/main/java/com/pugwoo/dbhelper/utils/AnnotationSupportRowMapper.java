@@ -7,16 +7,26 @@ import com.pugwoo.dbhelper.annotation.JoinRightTable;
 import com.pugwoo.dbhelper.annotation.JoinTable;
 import com.pugwoo.dbhelper.enums.FeatureEnum;
 import com.pugwoo.dbhelper.exception.RowMapperFailException;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
 import com.pugwoo.dbhelper.impl.part.P0_JdbcTemplateOp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.RowMapper;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * 2015年1月13日 17:48:30<br>
@@ -28,6 +38,9 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AnnotationSupportRowMapper.class);
 
+	/**每个类的映射模板，和具体的ResultSet、查询的字段无关*/
+	private static final Map<Class<?>, ClassTemplate> templateMap = new ConcurrentHashMap<>();
+
 	/**传入对应的dbHelper对象*/
 	private final DBHelper dbHelper;
 
@@ -39,6 +52,15 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 
 	private boolean selectOnlyKey = false; // 是否只选择主键列，默认false
 
+	/**当前映射计划对应的ResultSet，换了ResultSet需要重新生成映射计划*/
+	private ResultSet planResultSet;
+	private List<ColumnPlan> columnPlans;
+	private List<ColumnPlan> leftColumnPlans;
+	private List<ColumnPlan> rightColumnPlans;
+	private ClassTemplate template;
+	private ClassTemplate leftTemplate;
+	private ClassTemplate rightTemplate;
+
 	public AnnotationSupportRowMapper(DBHelper dbHelper, Class<T> clazz) {
 		this.dbHelper = dbHelper;
 		handleClazz(clazz);
@@ -73,44 +95,32 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 				return (T) basicTypeResult.getValue();
 			}
 
-			T obj = clazz.newInstance();
+			// 映射计划只在每个ResultSet的第一行生成，后续行直接复用
+			if (planResultSet != rs) {
+				buildPlan(rs, currentField);
+				planResultSet = rs;
+			}
+
+			T obj = (T) template.constructor.get();
 
 			if(isJoinVO) {
 				currentField.set(0, leftJoinField);
-				Object t1 = leftJoinField.getType().newInstance();
-				JoinLeftTable joinLeftTable = leftJoinField.getAnnotation(JoinLeftTable.class);
-
-				List<Field> fieldsT1 = DOInfoReader.getColumnsForSelect(leftJoinField.getType(), selectOnlyKey);
-				boolean isT1AllNull = handleFieldAndIsAllFieldNull(fieldsT1, joinLeftTable.alias(), t1, rs, currentField);
+				Object t1 = leftTemplate.constructor.get();
+				boolean isT1AllNull = handleFieldAndIsAllFieldNull(leftColumnPlans, t1, rs, currentField);
 				currentField.set(0, leftJoinField); // 因为handleFieldAndIsAllFieldNull中会修改currentField，所以重新设置
 				// 如果关联对象的所有字段都是null值，那么该对象设置为null值
 				DOInfoReader.setValue(leftJoinField, obj, isT1AllNull ? null : t1);
 				currentField.set(0, null);
 
 				currentField.set(0, rightJoinField);
-				Object t2 = rightJoinField.getType().newInstance();
-				JoinRightTable joinRightTable = rightJoinField.getAnnotation(JoinRightTable.class);
-
-				List<Field> fieldsT2 = DOInfoReader.getColumnsForSelect(rightJoinField.getType(), selectOnlyKey);
-				boolean isT2AllNull = handleFieldAndIsAllFieldNull(fieldsT2, joinRightTable.alias(), t2, rs, currentField);
+				Object t2 = rightTemplate.constructor.get();
+				boolean isT2AllNull = handleFieldAndIsAllFieldNull(rightColumnPlans, t2, rs, currentField);
 				currentField.set(0, rightJoinField);
 				DOInfoReader.setValue(rightJoinField, obj, isT2AllNull ? null : t2);
 				currentField.set(0, null);
 
 			} else {
-				List<Field> fields = DOInfoReader.getColumnsForSelect(clazz, selectOnlyKey);
-				for (Field field : fields) {
-					currentField.set(0, field);
-
-					Column column = field.getAnnotation(Column.class);
-					Object value = getFromRS(rs, column.value(), field);
-					if (value == null && InnerCommonUtils.isNotBlank(column.readIfNullScript())) {
-						value = ScriptUtils.getValueFromScript(column.ignoreScriptError(), column.readIfNullScript());
-					}
-
-					DOInfoReader.setValue(field, obj, value);
-					currentField.set(0, null);
-				}
+				handleFieldAndIsAllFieldNull(columnPlans, obj, rs, currentField);
 			}
 
 			return obj;
@@ -126,52 +136,169 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 		}
 	}
 
-	/**当列不存在时，默认warn log出来，支持配置为抛出异常*/
-	private Object getFromRS(ResultSet rs,
-							 String columnName,
-							 Field field) throws Exception {
+	private void buildPlan(ResultSet rs, List<Field> currentField) throws Exception {
+		if (template == null) {
+			template = getTemplate(clazz);
+		}
+		if (isJoinVO) {
+			if (leftTemplate == null) {
+				leftTemplate = getTemplate(leftJoinField.getType());
+				rightTemplate = getTemplate(rightJoinField.getType());
+			}
+			JoinLeftTable joinLeftTable = leftJoinField.getAnnotation(JoinLeftTable.class);
+			leftColumnPlans = buildColumnPlans(rs, leftJoinField.getType(), leftTemplate,
+					joinLeftTable.alias() + ".", currentField);
+			JoinRightTable joinRightTable = rightJoinField.getAnnotation(JoinRightTable.class);
+			rightColumnPlans = buildColumnPlans(rs, rightJoinField.getType(), rightTemplate,
+					joinRightTable.alias() + ".", currentField);
+		} else {
+			columnPlans = buildColumnPlans(rs, clazz, template, "", currentField);
+		}
+	}
+
+	/**
+	 * 实际查询的字段和延迟加载、线程上下文只查询的字段有关，所以每个ResultSet重新获取，字段的映射信息从类的模板中取
+	 */
+	private List<ColumnPlan> buildColumnPlans(ResultSet rs, Class<?> doClass, ClassTemplate classTemplate,
+											  String columnPrefix, List<Field> currentField) throws Exception {
+		List<Field> fields = DOInfoReader.getColumnsForSelect(doClass, selectOnlyKey);
+		List<ColumnPlan> plans = new ArrayList<>(fields.size());
+		for (Field field : fields) {
+			currentField.set(0, field);
+			ColumnTemplate columnTemplate = classTemplate.getColumn(field);
+			String columnName = columnPrefix + columnTemplate.column.value();
+			plans.add(new ColumnPlan(columnTemplate, findColumnIndex(dbHelper, clazz, rs, columnName, field)));
+			currentField.set(0, null);
+		}
+		return plans;
+	}
+
+	/**当列不存在时，默认warn log出来并返回0，支持配置为抛出异常*/
+	static int findColumnIndex(DBHelper dbHelper, Class<?> clazz, ResultSet rs,
+							   String columnName, Field field) throws SQLException {
 		if (dbHelper instanceof P0_JdbcTemplateOp) {
 			boolean throwErrorIfColumnNotExist =
 					((P0_JdbcTemplateOp) dbHelper).getFeature(FeatureEnum.THROW_EXCEPTION_IF_COLUMN_NOT_EXIST);
 			if (!throwErrorIfColumnNotExist) {
 				try {
-					return TypeAutoCast.getFromRS(rs, columnName, field);
+					return rs.findColumn(columnName);
 				} catch (SQLException e) {
 					String message = e.getMessage();
 					if (!(message.startsWith("Column ") && message.endsWith(" not found."))) {
 						throw e;
 					}
 					LOGGER.warn("column:[{}] not found in ResultSet, class:{}, field:{}", columnName, clazz, field);
-					return null;
+					return 0;
 				}
-			} else {
-				return TypeAutoCast.getFromRS(rs, columnName, field);
 			}
-		} else {
-			return TypeAutoCast.getFromRS(rs, columnName, field);
 		}
+		return rs.findColumn(columnName);
 	}
 
-	private boolean handleFieldAndIsAllFieldNull(List<Field> fields, String tableAlias, Object t, ResultSet rs,
+	private boolean handleFieldAndIsAllFieldNull(List<ColumnPlan> plans, Object t, ResultSet rs,
 												 List<Field> currentField) throws Exception {
 		boolean isAllNull = true;
-		for (Field field : fields) {
-			currentField.set(0, field);
-
-			Column column = field.getAnnotation(Column.class);
-			String columnName = tableAlias + "." + column.value();;
+		for (ColumnPlan plan : plans) {
+			ColumnTemplate column = plan.template;
+			currentField.set(0, column.field);
 
-			Object value = getFromRS(rs, columnName, field);
+			Object value = plan.columnIndex == 0 ? null : column.converter.convert(rs, plan.columnIndex);
 			if(value != null) { // 这个值是否为null直接来自于数据库，不受是否设置了column.readIfNullScript()的影响
 				isAllNull = false;
 			}
-			if (value == null && InnerCommonUtils.isNotBlank(column.readIfNullScript())) {
-				value = ScriptUtils.getValueFromScript(column.ignoreScriptError(), column.readIfNullScript());
+			if (value == null && column.hasReadIfNullScript) {
+				value = ScriptUtils.getValueFromScript(column.column.ignoreScriptError(), column.column.readIfNullScript());
 			}
-			DOInfoReader.setValue(field, t, value);
+			DOInfoReader.setValue(column.field, t, value);
 
 			currentField.set(0, null);
 		}
 		return isAllNull;
 	}
-}
\ No newline at end of file
+
+	/**单个字段在某个ResultSet中的映射，每个ResultSet只在第一行时解析一次*/
+	private static class ColumnPlan {
+		private final ColumnTemplate template;
+		/**列在ResultSet中的下标，从1开始；0表示该列不存在*/
+		private final int columnIndex;
+
+		private ColumnPlan(ColumnTemplate template, int columnIndex) {
+			this.template = template;
+			this.columnIndex = columnIndex;
+		}
+	}
+
+	// ==================================================================================
+
+	private static ClassTemplate getTemplate(Class<?> clazz) {
+		if (!DBHelperContext.isCacheEnabled()) {
+			return new ClassTemplate(clazz);
+		}
+		ClassTemplate template = templateMap.get(clazz);
+		if (template == null) {
+			template = new ClassTemplate(clazz);
+			templateMap.put(clazz, template);
+		}
+		return template;
+	}
+
+	/**类的映射模板：生成好的无参构造方法和各个@Column字段的映射信息*/
+	private static class ClassTemplate {
+		private final Supplier<Object> constructor;
+		private final Map<Field, ColumnTemplate> columns = new ConcurrentHashMap<>();
+
+		private ClassTemplate(Class<?> clazz) {
+			this.constructor = generateConstructor(clazz);
+		}
+
+		private ColumnTemplate getColumn(Field field) {
+			ColumnTemplate column = columns.get(field);
+			if (column == null) {
+				column = new ColumnTemplate(field);
+				columns.put(field, column);
+			}
+			return column;
+		}
+	}
+
+	/**单个字段的映射信息，和具体的ResultSet无关*/
+	private static class ColumnTemplate {
+		private final Field field;
+		private final Column column;
+		private final TypeAutoCast.ColumnConverter converter;
+		private final boolean hasReadIfNullScript;
+
+		private ColumnTemplate(Field field) {
+			this.field = field;
+			this.column = field.getAnnotation(Column.class);
+			this.converter = TypeAutoCast.getConverter(field);
+			this.hasReadIfNullScript = InnerCommonUtils.isNotBlank(column.readIfNullScript());
+		}
+	}
+
+	/**
+	 * 生成无参构造方法的调用，public且本类ClassLoader可见的类使用LambdaMetafactory，否则使用反射
+	 */
+	@SuppressWarnings("unchecked")
+	private static Supplier<Object> generateConstructor(Class<?> clazz) {
+		try {
+			Constructor<?> constructor = clazz.getDeclaredConstructor();
+			if (Modifier.isPublic(constructor.getModifiers()) && FieldAccessor.isPublicAndVisible(clazz)) {
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				CallSite callSite = LambdaMetafactory.metafactory(lookup, "get",
+						MethodType.methodType(Supplier.class), MethodType.methodType(Object.class),
+						lookup.unreflectConstructor(constructor), MethodType.methodType(clazz));
+				return (Supplier<Object>) callSite.getTarget().invoke();
+			}
+		} catch (Throwable e) {
+			LOGGER.debug("generate lambda constructor fail, class:{}", clazz, e);
+		}
+		return () -> {
+			try {
+				return clazz.newInstance();
+			} catch (InstantiationException | IllegalAccessException e) {
+				throw new RowMapperFailException(e);
+			}
+		};
+	}
+}
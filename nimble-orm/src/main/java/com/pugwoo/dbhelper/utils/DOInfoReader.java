@@ -3,6 +3,7 @@ package com.pugwoo.dbhelper.utils;
 import com.pugwoo.dbhelper.annotation.*;
 import com.pugwoo.dbhelper.cache.ClassInfoCache;
 import com.pugwoo.dbhelper.exception.*;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
 import com.pugwoo.dbhelper.json.NimbleOrmJSON;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +13,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -202,6 +204,7 @@ public class DOInfoReader {
 	/**
 	 * 获得所有有@Column注解的列，包括继承的父类中的，顺序父类先。
 	 * 该方法只用于select读操作。
+	 * 不包含延迟加载的字段；当前线程通过DBHelperContext指定了只查询的字段时，只返回这些字段和主键。
 	 * @param selectOnlyKey 是否只select主键
 	 * @throws NoColumnAnnotationException 当没有一个@Column注解时抛出
 	 * @return 不会返回null
@@ -211,6 +214,15 @@ public class DOInfoReader {
 
 		if(selectOnlyKey) {
 			result = InnerCommonUtils.filter(result, o -> o.getAnnotation(Column.class).isKey());
+		} else {
+			// 只查询指定的字段时，主键总是查询出来；否则不查询延迟加载的字段
+			Set<String> selectColumns = DBHelperContext.getSelectColumns(clazz);
+			if (selectColumns != null) {
+				result = InnerCommonUtils.filter(result,
+						o -> o.getAnnotation(Column.class).isKey() || selectColumns.contains(o.getName()));
+			} else {
+				result = ClassInfoCache.getNonLazyColumnFields(clazz);
+			}
 		}
 		if (result.isEmpty()) {
 			throw new NoColumnAnnotationException("class " + clazz.getName() + " does not have any @Column fields");
@@ -219,6 +231,28 @@ public class DOInfoReader {
 		return result;
 	}
 	
+	/**
+	 * 是否是延迟加载的字段，主键不会延迟加载
+	 */
+	public static boolean isLazyColumn(Field field) {
+		Column column = field.getAnnotation(Column.class);
+		return column != null && column.lazy() && !column.isKey();
+	}
+
+	/**
+	 * 获得类中延迟加载的字段
+	 * @param fieldNames 只获取这些字段，值是成员变量的名称；为空时获取全部延迟加载的字段
+	 * @return 不会返回null
+	 */
+	public static List<Field> getLazyColumns(Class<?> clazz, String... fieldNames) {
+		List<Field> result = InnerCommonUtils.filter(getColumns(clazz), DOInfoReader::isLazyColumn);
+		if (fieldNames != null && fieldNames.length > 0) {
+			Set<String> names = new HashSet<>(Arrays.asList(fieldNames));
+			result = InnerCommonUtils.filter(result, o -> names.contains(o.getName()));
+		}
+		return result;
+	}
+
 	/**
 	 * 获得注解了@JoinLeftTable的字段，如果没有注解，抛出NoJoinTableMemberException
 	 */
@@ -360,8 +394,12 @@ public class DOInfoReader {
 	 * 优先通过getter获得值，如果没有getter，则直接获取
 	 */
 	public static Object getValue(Field field, Object object) {
-		Method method = ClassInfoCache.getFieldGetMethod(field);
+		if (DBHelperContext.isCacheEnabled()) {
+			return ClassInfoCache.getFieldAccessor(field).get(object);
+		}
 
+		// 不开启缓存时直接反射调用，不生成读写器
+		Method method = ClassInfoCache.getFieldGetMethod(field);
 		if(method != null) {
 			try {
 				method.setAccessible(true);
@@ -371,8 +409,8 @@ public class DOInfoReader {
 			}
 		}
 
-		field.setAccessible(true);
 		try {
+			field.setAccessible(true);
 			return field.get(object);
 		} catch (Exception e) {
 			LOGGER.error("field:{} get fail", field, e);
@@ -423,18 +461,23 @@ public class DOInfoReader {
 	 */
 	public static void setValue(Field field, Object object, Object value) {
 		value = TypeAutoCast.cast(value, field.getType());
+		if (DBHelperContext.isCacheEnabled()) {
+			ClassInfoCache.getFieldAccessor(field).set(object, value);
+			return;
+		}
+
 		Method method = ClassInfoCache.getFieldSetMethod(field);
-		
 		if(method != null) {
 			try {
+				method.setAccessible(true);
 				method.invoke(object, value);
 			} catch (Exception e) {
 				LOGGER.error("set method:{} invoke fail, object:{}, value:{}", method.getName(),
 						NimbleOrmJSON.toJson(object), value, e);
 			}
 		} else {
-			field.setAccessible(true);
 			try {
+				field.setAccessible(true);
 				field.set(object, value);
 			} catch (Exception e) {
 				LOGGER.error("field:{} set fail, object:{}, value:{}", field.getName(),
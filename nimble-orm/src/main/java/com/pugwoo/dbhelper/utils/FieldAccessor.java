@@ -0,0 +1,233 @@
+package com.pugwoo.dbhelper.utils;
+
+import com.pugwoo.dbhelper.cache.ClassInfoCache;
+import com.pugwoo.dbhelper.json.NimbleOrmJSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 字段读写器，每个字段生成一次后重复使用，避免每次读写都走反射调用。<br>
+ * 读：优先通过getter方法，没有getter或getter调用失败则直接读字段；<br>
+ * 写：优先通过setter方法，没有setter则直接写字段。<br>
+ * 对于public的类和方法，使用LambdaMetafactory生成直接调用的访问器；其它情况使用MethodHandle，最后才退回到反射。
+ */
+public class FieldAccessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FieldAccessor.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    interface Getter {
+        Object get(Object object) throws Throwable;
+    }
+
+    interface Setter {
+        void set(Object object, Object value) throws Throwable;
+    }
+
+    private final Field field;
+    private final Method getMethod;
+    private final Method setMethod;
+    /**通过getter方法读，没有getter方法时为null*/
+    private final Getter methodGetter;
+    /**直接读字段*/
+    private final Getter fieldGetter;
+    /**通过setter方法写，没有setter方法时直接写字段*/
+    private final Setter setter;
+
+    private FieldAccessor(Field field, boolean isGenerate) {
+        this.field = field;
+        this.getMethod = ClassInfoCache.getFieldGetMethod(field);
+        this.setMethod = ClassInfoCache.getFieldSetMethod(field);
+
+        // 非public类的public getter/setter也需要setAccessible才能调用
+        setAccessible(field);
+        if (getMethod != null) {
+            setAccessible(getMethod);
+        }
+        if (setMethod != null) {
+            setAccessible(setMethod);
+        }
+
+        if (isGenerate) {
+            this.methodGetter = getMethod == null ? null : generateGetter(getMethod);
+            this.fieldGetter = generateFieldGetter(field);
+            this.setter = setMethod == null ? generateFieldSetter(field) : generateSetter(setMethod);
+        } else {
+            Method getMethod = this.getMethod;
+            Method setMethod = this.setMethod;
+            this.methodGetter = getMethod == null ? null : getMethod::invoke;
+            this.fieldGetter = field::get;
+            this.setter = setMethod == null ? field::set : setMethod::invoke;
+        }
+    }
+
+    private static void setAccessible(AccessibleObject accessibleObject) {
+        try {
+            accessibleObject.setAccessible(true);
+        } catch (RuntimeException e) {
+            LOGGER.warn("{} setAccessible fail", accessibleObject, e);
+        }
+    }
+
+    /**
+     * 生成字段读写器
+     * @param field 字段
+     * @param isGenerate 是否生成直接调用的访问器，为false时使用反射，适用于不缓存的场景
+     */
+    public static FieldAccessor create(Field field, boolean isGenerate) {
+        return new FieldAccessor(field, isGenerate);
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * 读取字段值，读取失败会log error并返回null
+     */
+    public Object get(Object object) {
+        if (methodGetter != null) {
+            try {
+                return methodGetter.get(object);
+            } catch (Throwable e) {
+                LOGGER.error("get method:{} invoke fail", getMethod, e);
+            }
+        }
+
+        try {
+            return fieldGetter.get(object);
+        } catch (Throwable e) {
+            LOGGER.error("field:{} get fail", field, e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入字段值，value需要已经转换为字段的类型；写入失败会log error但不会抛出异常
+     */
+    public void set(Object object, Object value) {
+        try {
+            setter.set(object, value);
+        } catch (Throwable e) {
+            if (setMethod != null) {
+                LOGGER.error("set method:{} invoke fail, object:{}, value:{}", setMethod.getName(),
+                        NimbleOrmJSON.toJson(object), value, e);
+            } else {
+                LOGGER.error("field:{} set fail, object:{}, value:{}", field.getName(),
+                        NimbleOrmJSON.toJson(object), value, e);
+            }
+        }
+    }
+
+    private static Getter generateGetter(Method method) {
+        if (isLambdaAccessible(method, method.getReturnType())) {
+            try {
+                CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "get",
+                        MethodType.methodType(Getter.class), GETTER_TYPE, LOOKUP.unreflect(method),
+                        MethodType.methodType(wrap(method.getReturnType()), method.getDeclaringClass()));
+                return (Getter) callSite.getTarget().invoke();
+            } catch (Throwable e) {
+                LOGGER.debug("generate lambda getter fail, method:{}", method, e);
+            }
+        }
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method).asType(GETTER_TYPE);
+            return object -> handle.invokeExact(object);
+        } catch (Throwable e) {
+            LOGGER.debug("generate method handle getter fail, method:{}", method, e);
+            return method::invoke;
+        }
+    }
+
+    private static Setter generateSetter(Method method) {
+        Class<?> paramType = method.getParameterTypes()[0];
+        if (isLambdaAccessible(method, paramType)) {
+            try {
+                // setter的返回值(例如链式setter)会被丢弃
+                CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "set",
+                        MethodType.methodType(Setter.class), SETTER_TYPE, LOOKUP.unreflect(method),
+                        MethodType.methodType(void.class, method.getDeclaringClass(), wrap(paramType)));
+                return (Setter) callSite.getTarget().invoke();
+            } catch (Throwable e) {
+                LOGGER.debug("generate lambda setter fail, method:{}", method, e);
+            }
+        }
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method).asType(SETTER_TYPE);
+            return (object, value) -> {
+                handle.invokeExact(object, value);
+            };
+        } catch (Throwable e) {
+            LOGGER.debug("generate method handle setter fail, method:{}", method, e);
+            return method::invoke;
+        }
+    }
+
+    private static Getter generateFieldGetter(Field field) {
+        try {
+            MethodHandle handle = LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+            return object -> handle.invokeExact(object);
+        } catch (Throwable e) {
+            LOGGER.debug("generate method handle field getter fail, field:{}", field, e);
+            return field::get;
+        }
+    }
+
+    private static Setter generateFieldSetter(Field field) {
+        try {
+            MethodHandle handle = LOOKUP.unreflectSetter(field).asType(SETTER_TYPE);
+            return (object, value) -> {
+                handle.invokeExact(object, value);
+            };
+        } catch (Throwable e) {
+            LOGGER.debug("generate method handle field setter fail, field:{}", field, e);
+            return field::set;
+        }
+    }
+
+    /**
+     * 生成的lambda类由本类的ClassLoader加载，所以要求涉及的类都是public的，并且可以从本类的ClassLoader看到，
+     * 否则(例如devtools的RestartClassLoader加载的DO类)使用MethodHandle
+     */
+    private static boolean isLambdaAccessible(Method method, Class<?> valueType) {
+        return Modifier.isPublic(method.getModifiers())
+                && isPublicAndVisible(method.getDeclaringClass())
+                && isPublicAndVisible(valueType);
+    }
+
+    static boolean isPublicAndVisible(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        if (clazz.isPrimitive()) {
+            return true;
+        }
+        if (!Modifier.isPublic(clazz.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(clazz.getName(), false, FieldAccessor.class.getClassLoader()) == clazz;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static Class<?> wrap(Class<?> clazz) {
+        return MethodType.methodType(clazz).wrap().returnType();
+    }
+
+}
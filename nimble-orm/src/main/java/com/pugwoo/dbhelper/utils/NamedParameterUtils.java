@@ -1,5 +1,7 @@
 package com.pugwoo.dbhelper.utils;
 
+import com.pugwoo.dbhelper.cache.LRUCache;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,7 +19,7 @@ public class NamedParameterUtils {
 	
 	@SuppressWarnings("unchecked")
 	public static Map<String, Object> transParam(List<Object> params) {
-		Map<String, Object> map = new HashMap<>();
+		Map<String, Object> map = new HashMap<>(params == null ? 16 : params.size() * 4 / 3 + 1);
 		if(params != null) {
 			int currParamIndex = 1;
 			for(Object param : params) {
@@ -91,8 +93,60 @@ public class NamedParameterUtils {
 			return "";
 		}
 
-		String originSql = sql;
-		
+		TransResult result = getTransResult(sql);
+		if (result.paramCount != args.size()) {
+			LOGGER.error("SQL args not matched, provide args count:{}, expected:{}, SQL:{}",
+					args.size(), result.paramCount, sql);
+		}
+		return result.sql;
+	}
+
+	/**
+	 * 参数中是否有集合或数组(byte[]除外)，有的话需要用namedParameterJdbcTemplate展开成in (?,?,?)；
+	 * 参数个数和sql中?的个数不一致时，也需要按命名参数的方式处理(多余的参数会被忽略)，和按位置传参的报错行为不同。
+	 * 都没有的话可以直接用jdbcTemplate按位置传参
+	 */
+	public static boolean isNeedNamedParameter(String sql, List<Object> args) {
+		if (args == null) {
+			return false;
+		}
+		for (Object arg : args) {
+			if (arg instanceof Collection<?>) {
+				return true;
+			}
+			if (arg != null && arg.getClass().isArray() && !(arg instanceof byte[])) {
+				return true;
+			}
+		}
+		return sql != null && !sql.isEmpty() && getTransResult(sql).paramCount != args.size();
+	}
+
+	private static TransResult getTransResult(String sql) {
+		TransResult result = DBHelperContext.isCacheEnabled() ? transCache.get(sql) : null;
+		if (result == null) {
+			result = doTrans(sql);
+			if (DBHelperContext.isCacheEnabled()) {
+				transCache.put(sql, result);
+			}
+		}
+		return result;
+	}
+
+	/**sql可能是用户拼接的，数量不可控，所以用定长的LRU缓存*/
+	private static final LRUCache<String, TransResult> transCache = new LRUCache<>(2048);
+
+	private static class TransResult {
+		private final String sql;
+		/**sql中?参数的个数*/
+		private final int paramCount;
+
+		private TransResult(String sql, int paramCount) {
+			this.sql = sql;
+			this.paramCount = paramCount;
+		}
+	}
+
+	private static TransResult doTrans(String sql) {
 		StringBuilder sb = new StringBuilder();
 		boolean isInStr = false;
 		boolean isPreSlash = false;
@@ -120,12 +174,7 @@ public class NamedParameterUtils {
 			isPreSlash = ch == '\\';
 		}
 
-        if (currParamIndex - 1 != args.size()) {
-			LOGGER.error("SQL args not matched, provide args count:{}, expected:{}, SQL:{}",
-					args.size(), currParamIndex - 1, originSql);
-		}
-
-		return sb.toString();
+		return new TransResult(sb.toString(), currParamIndex - 1);
 	}
 	
 }
@@ -1,13 +1,19 @@
 package com.pugwoo.dbhelper.utils;
 
 import com.pugwoo.dbhelper.exception.ScriptErrorException;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
 import org.mvel2.MVEL;
+import org.mvel2.compiler.ExecutableLiteral;
+import org.mvel2.integration.impl.ItemResolverFactory;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ScriptUtils {
 
@@ -22,10 +28,8 @@ public class ScriptUtils {
      */
     public static void setValueFromScript(Object t, Field field,
                                           Boolean ignoreScriptError, String script) {
-        Map<String, Object> vars = new HashMap<>();
-        vars.put("t", t);
         try {
-            Object value = MVEL.eval(script, vars);
+            Object value = executeScript(t, script);
             DOInfoReader.setValue(field, t, value);
         } catch (Throwable e) {
             LOGGER.error("execute script fail: {}", script, e);
@@ -41,10 +45,8 @@ public class ScriptUtils {
      * @param ignoreScriptError 是否忽略脚本出错，如果忽略，则方法返回null
      */
     public static Object getValueFromScript(Object t, Boolean ignoreScriptError, String script) {
-        Map<String, Object> vars = new HashMap<>();
-        vars.put("t", t);
         try {
-            return MVEL.eval(script, vars);
+            return executeScript(t, script);
         } catch (Throwable e) {
             LOGGER.error("execute script fail: {}", script, e);
             if(!ignoreScriptError) {
@@ -59,7 +61,11 @@ public class ScriptUtils {
      */
     public static Object getValueFromScript(Boolean ignoreScriptError, String script) {
         try {
-            return MVEL.eval(script);
+            Serializable compiled = getCompiledScript(script);
+            if (compiled instanceof ExecutableLiteral) {
+                return ((ExecutableLiteral) compiled).getLiteral();
+            }
+            return MVEL.executeExpression(compiled);
         } catch (Throwable e) {
             LOGGER.error("execute script fail: {}", script, e);
             if(!ignoreScriptError) {
@@ -69,4 +75,59 @@ public class ScriptUtils {
         }
     }
 
+    /**
+     * 执行mvel脚本，脚本中可以通过t引用传入的对象；出错时直接抛出异常，由调用方处理
+     */
+    public static Object executeScript(Object t, String script) {
+        Serializable compiled = getCompiledScript(script);
+        // 借出当前线程的变量工厂，脚本中嵌套执行脚本时会新建一个，互不影响
+        ScriptVariables vars = threadScriptVariables.get();
+        if (vars == null) {
+            vars = new ScriptVariables();
+        } else {
+            threadScriptVariables.remove();
+        }
+        try {
+            vars.t.setValue(t);
+            return MVEL.executeExpression(compiled, vars.factory);
+        } finally {
+            vars.t.setValue(null);
+            // 脚本定义了局部变量时不再复用，避免带到下一次执行
+            if (vars.localVars.isEmpty()) {
+                threadScriptVariables.set(vars);
+            }
+        }
+    }
+
+    /**
+     * 脚本执行用的变量工厂，变量t通过ItemResolver直接提供，脚本中定义的局部变量放到localVars中
+     */
+    private static class ScriptVariables {
+        private final ItemResolverFactory.ItemResolver t = new ItemResolverFactory.ItemResolver("t");
+        private final Map<String, Object> localVars = new HashMap<>();
+        private final ItemResolverFactory factory =
+                new ItemResolverFactory(t, new MapVariableResolverFactory(localVars));
+    }
+
+    private static final ThreadLocal<ScriptVariables> threadScriptVariables = new ThreadLocal<>();
+
+    // 这里能用缓存是因为脚本都来自于注解，数量固定
+    private static final Map<String, Serializable> compiledScriptCache = new ConcurrentHashMap<>();
+
+    /**
+     * 获得编译后的mvel脚本，每个脚本只编译一次。
+     * 对于常量脚本(例如'abc'、0、1+1)，编译结果是ExecutableLiteral，常量已经在编译时计算好
+     */
+    private static Serializable getCompiledScript(String script) {
+        if (!DBHelperContext.isCacheEnabled()) {
+            return MVEL.compileExpression(script);
+        }
+        Serializable compiled = compiledScriptCache.get(script);
+        if (compiled == null) {
+            compiled = MVEL.compileExpression(script);
+            compiledScriptCache.put(script, compiled);
+        }
+        return compiled;
+    }
+
 }
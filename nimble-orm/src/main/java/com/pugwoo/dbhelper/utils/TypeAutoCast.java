@@ -1,6 +1,7 @@
 package com.pugwoo.dbhelper.utils;
 
 import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.impl.DBHelperContext;
 import com.pugwoo.dbhelper.json.NimbleOrmDateUtils;
 import com.pugwoo.dbhelper.json.NimbleOrmJSON;
 import org.slf4j.Logger;
@@ -20,7 +21,9 @@ import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * 2015年8月22日 16:58:48
@@ -59,112 +62,175 @@ public class TypeAutoCast {
 	 * 2018年4月24日 11:48:32 新增支持标记为isJSON的列的处理。
 	 */
 	public static Object getFromRS(ResultSet rs, String columnName, Field field) throws Exception {
-		int columnIndex = rs.findColumn(columnName);
-		Object result = rs.getObject(columnIndex);
-		if(result == null) { // 保证null会返回null值
-			return null;
+		return getFromRS(rs, rs.findColumn(columnName), field);
+	}
+
+	/**
+	 * 从ResultSet中按列下标读出数据并转成成对应的类型，列下标从1开始。
+	 * 适用于已经提前解析好列下标的场景，避免每行都按列名查找。
+	 */
+	public static Object getFromRS(ResultSet rs, int columnIndex, Field field) throws Exception {
+		return getConverter(field).convert(rs, columnIndex);
+	}
+
+	/**
+	 * 从ResultSet的某一列读出数据并转换成字段类型的转换器，每列只读取一次；数据库的值为null时返回null
+	 */
+	public interface ColumnConverter {
+		Object convert(ResultSet rs, int columnIndex) throws Exception;
+	}
+
+	private static final Map<Field, ColumnConverter> converterCache = new ConcurrentHashMap<>();
+
+	/**
+	 * 获得字段对应的转换器，每个字段只解析一次
+	 */
+	public static ColumnConverter getConverter(Field field) {
+		if (!DBHelperContext.isCacheEnabled()) {
+			return createConverter(field);
 		}
-		
+		ColumnConverter converter = converterCache.get(field);
+		if (converter == null) {
+			converter = createConverter(field);
+			converterCache.put(field, converter);
+		}
+		return converter;
+	}
+
+	private static ColumnConverter createConverter(Field field) {
 		Column column = field.getAnnotation(Column.class);
 		if(column != null && column.isJSON()) { // 优先处理标记为json的列
-			String valStr = (result instanceof String) ? (String) result : rs.getString(columnIndex);
-			if(InnerCommonUtils.isBlank(valStr)) {
-				return null;
-			}
-
-			Type genericType = field.getGenericType();
-			try {
-				if (genericType instanceof Class) {
-					return NimbleOrmJSON.parse(valStr, field.getType());
-				} else { // 处理泛型
-				    return NimbleOrmJSON.parseGeneric(valStr, (ParameterizedType) genericType);
-				}
-			} catch(Exception e) {
-				LOGGER.error("parse column to JSON fail, json:{}, type:{}", valStr, genericType, e);
-				return valStr; // 作为string返回，交由上一级处理
-			}
+			return (rs, columnIndex) -> parseJSON(rs.getString(columnIndex), field);
 		}
-		
+
 		Class<?> clazz = field.getType();
 
 		if(clazz == String.class) {
-			return result instanceof String ? result : rs.getString(columnIndex);
+			return ResultSet::getString;
 		}
 		if(clazz == Integer.class || clazz == int.class) {
-			return result instanceof Integer ? result : rs.getInt(columnIndex);
+			return (rs, columnIndex) -> {
+				int value = rs.getInt(columnIndex);
+				return value == 0 && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == Long.class || clazz == long.class) {
-			return result instanceof Long ? result : rs.getLong(columnIndex);
+			return (rs, columnIndex) -> {
+				long value = rs.getLong(columnIndex);
+				return value == 0 && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == Boolean.class || clazz == boolean.class) {
-			return result instanceof Boolean ? result : rs.getBoolean(columnIndex);
+			return (rs, columnIndex) -> {
+				boolean value = rs.getBoolean(columnIndex);
+				return !value && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == Byte.class || clazz == byte.class) {
-			return result instanceof Byte ? result : rs.getByte(columnIndex);
+			return (rs, columnIndex) -> {
+				byte value = rs.getByte(columnIndex);
+				return value == 0 && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == byte[].class) {
-			return result instanceof byte[] ? result : rs.getBytes(columnIndex);
+			return ResultSet::getBytes;
 		}
 		if(clazz == Short.class || clazz == short.class) {
-			return result instanceof Short ? result : rs.getShort(columnIndex);
+			return (rs, columnIndex) -> {
+				short value = rs.getShort(columnIndex);
+				return value == 0 && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == Float.class || clazz == float.class) {
-			return result instanceof Float ? result : rs.getFloat(columnIndex);
+			return (rs, columnIndex) -> {
+				float value = rs.getFloat(columnIndex);
+				return value == 0 && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == Double.class || clazz == double.class) {
-			return result instanceof Double ? result : rs.getDouble(columnIndex);
+			return (rs, columnIndex) -> {
+				double value = rs.getDouble(columnIndex);
+				return value == 0 && rs.wasNull() ? null : value;
+			};
 		}
 		if(clazz == BigDecimal.class) {
-			return result instanceof BigDecimal ? result : rs.getBigDecimal(columnIndex);
+			return ResultSet::getBigDecimal;
 		}
 		if (clazz == java.util.Date.class) {
-			// 说明：这里要严格匹配，因为java.sql.Date是java.util.Date的子类，但行为不同
-			if (Objects.equals(result.getClass(), java.util.Date.class)) {
-				return result;
-			}
-			return getDate(rs, columnIndex);
+			return TypeAutoCast::getDate;
 		}
 		if (clazz == LocalDateTime.class) {
-			if (result instanceof LocalDateTime) {
-				return result;
-			}
-			Date date = getDate(rs, columnIndex);
-			if (date == null) {
-				return null;
-			}
-			return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
+			return new JavaTimeConverter(LocalDateTime.class,
+					date -> date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
 		}
 		if (clazz == LocalDate.class) {
-			if (result instanceof LocalDate) {
-				return result;
-			}
-			Date date = getDate(rs, columnIndex);
-			if (date == null) {
-				return null;
-			}
-			return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+			return new JavaTimeConverter(LocalDate.class,
+					date -> date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
 		}
 		if (clazz == LocalTime.class) {
-			if (result instanceof LocalTime) {
-				return result;
-			}
-			Date date = getDate(rs, columnIndex);
-			if (date == null) {
-				return null;
-			}
-			return date.toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
+			return new JavaTimeConverter(LocalTime.class,
+					date -> date.toInstant().atZone(ZoneId.systemDefault()).toLocalTime());
 		}
 		if (clazz == java.sql.Date.class) {
-			return result instanceof java.sql.Date ? result : rs.getDate(columnIndex);
+			return ResultSet::getDate;
 		}
 		if (clazz == java.sql.Time.class) {
-			return result instanceof java.sql.Time ? result : rs.getDate(columnIndex);
+			return ResultSet::getTime;
 		}
 		if (clazz == java.sql.Timestamp.class) {
-			return result instanceof java.sql.Timestamp ? result : rs.getTimestamp(columnIndex);
+			return ResultSet::getTimestamp;
+		}
+
+		return ResultSet::getObject;
+	}
+
+	private static Object parseJSON(String valStr, Field field) {
+		if(InnerCommonUtils.isBlank(valStr)) {
+			return null;
+		}
+
+		Type genericType = field.getGenericType();
+		try {
+			if (genericType instanceof Class) {
+				return NimbleOrmJSON.parse(valStr, field.getType());
+			} else { // 处理泛型
+				return NimbleOrmJSON.parseGeneric(valStr, (ParameterizedType) genericType);
+			}
+		} catch(Exception e) {
+			LOGGER.error("parse column to JSON fail, json:{}, type:{}", valStr, genericType, e);
+			return valStr; // 作为string返回，交由上一级处理
+		}
+	}
+
+	/**
+	 * java.time类型的转换器，优先使用rs.getObject(i, LocalDateTime.class)直接读取；
+	 * 当jdbc driver不支持时，改为通过getDate读取再转换，并按ResultSet实现类记住不支持，不影响其它driver
+	 */
+	private static class JavaTimeConverter implements ColumnConverter {
+		private final Class<?> type;
+		private final Function<Date, Object> fromDate;
+		private final Set<Class<?>> getObjectUnsupportedRsClasses = ConcurrentHashMap.newKeySet();
+
+		private JavaTimeConverter(Class<?> type, Function<Date, Object> fromDate) {
+			this.type = type;
+			this.fromDate = fromDate;
+		}
+
+		@Override
+		public Object convert(ResultSet rs, int columnIndex) throws Exception {
+			Class<?> rsClass = rs.getClass();
+			if (!getObjectUnsupportedRsClasses.contains(rsClass)) {
+				try {
+					return rs.getObject(columnIndex, type);
+				} catch (Exception e) {
+					getObjectUnsupportedRsClasses.add(rsClass);
+					LOGGER.debug("getObject with type:{} is not supported by {}, use getTimestamp instead",
+							type, rsClass.getName(), e);
+				}
+			}
+			Date date = getDate(rs, columnIndex);
+			return date == null ? null : fromDate.apply(date);
 		}
-		
-		return result;
 	}
 
 	private static Date getDate(ResultSet rs, int columnIndex) throws Exception {